@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import packet.Packet;
+import packet.Registry;
+import packet.binary.BinaryReader;
+import packet.binary.BinaryWriter;
+
+/**
+ * масштабирование одного общего экземпляра {@link BinaryWriter}/{@link BinaryReader} по потокам<br />
+ * каждый поток пишет и читает свой пакет своими потоками ввода/вывода, писатель, читатель и реестр общие;
+ * без общей блокировки ускорение близко к количеству потоков до количества ядер<br />
+ * запуск: java benchmark.BinaryCodecScaling [наибольшее количество потоков] [мс на замер]
+ * @author Ilya Sokolov
+ */
+public final class BinaryCodecScaling {
+	private BinaryCodecScaling() { }
+	
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		
+		Registry reg = new Registry();
+		BinaryWriter writer = new BinaryWriter();
+		BinaryReader reader = new BinaryReader();
+		
+		Packet[] packets = new Packet[maxThreads];
+		ByteArrayOutputStream[] outs = new ByteArrayOutputStream[maxThreads];
+		byte[][] encoded = new byte[maxThreads][];
+		for(int t = 0; t < maxThreads; ++t) {
+			Packet p = new Packet();
+			p.add("id", t);
+			p.add("time", System.currentTimeMillis());
+			p.add("value", 0.5 * t);
+			p.add("name", "thread-" + t);
+			p.add("data", new int[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			packets[t] = p;
+			outs[t] = new ByteArrayOutputStream(256);
+			p.write((OutputStream)outs[t], null, reg, writer);
+			encoded[t] = outs[t].toByteArray();
+		}
+		
+		Throughput.scaling("write + read of one packet, shared BinaryWriter/BinaryReader", maxThreads, millis, thread -> {
+			ByteArrayOutputStream out = outs[thread];
+			out.reset();
+			packets[thread].write((OutputStream)out, null, reg, writer);
+			Packet p = packets[thread].read((InputStream)new ByteArrayInputStream(encoded[thread]), reg, reader);
+			if(p == null) { throw new IllegalStateException(); }
+		});
+	}
+}
@@ -0,0 +1,50 @@
+package benchmark;
+
+/**
+ * замер времени одной операции в одном потоке<br />
+ * результат - лучшее время из нескольких замеров после прогрева
+ * @author Ilya Sokolov
+ */
+final class Latency {
+	/**
+	 * операция замера
+	 */
+	interface Op {
+		/**
+		 * @return результат (чтобы операция не была удалена JIT)
+		 * @throws Exception
+		 */
+		Object run() throws Exception;
+	}
+	
+	/**
+	 * замеров, первые {@link #WARMUP} из них - прогрев
+	 */
+	private static final int ROUNDS = 15;
+	private static final int WARMUP = 5;
+	
+	/**
+	 * сюда складываются результаты операций
+	 */
+	static volatile int s_Sink;
+	
+	private Latency() { }
+	
+	/**
+	 * @param reps повторов в одном замере
+	 * @param op операция
+	 * @return наносекунд на операцию
+	 * @throws Exception
+	 */
+	static double time(int reps, Op op) throws Exception {
+		double best = Double.MAX_VALUE;
+		int sink = 0;
+		for(int round = 0; round < ROUNDS; ++round) {
+			long t = System.nanoTime();
+			for(int i = 0; i < reps; ++i) { sink += System.identityHashCode(op.run()); }
+			if(round >= WARMUP) { best = Math.min(best, (double)(System.nanoTime() - t) / reps); }
+		}
+		s_Sink = sink;
+		return best;
+	}
+}
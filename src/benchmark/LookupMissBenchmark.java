@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import packet.Packet;
+import packet.Registry;
+import packet.Registry.NotTypeIDException;
+import packet.Serialize;
+import packet.binary.BinaryWriter;
+
+/**
+ * стоимость промаха поиска в реестре: исключение ({@link Registry#getSerializer}) и
+ * null ({@link Registry#findSerializer}), и запись массива незарегистрированного типа,
+ * которая раньше выбирала кодирование по перехваченному исключению<br />
+ * время одной операции в наносекундах (лучшее из нескольких замеров)<br />
+ * запуск: java benchmark.LookupMissBenchmark
+ * @author Ilya Sokolov
+ */
+public final class LookupMissBenchmark {
+	private LookupMissBenchmark() { }
+	
+	public static void main(String[] args) throws Exception {
+		Registry reg = new Registry();
+		int missing = Registry.calculateClassID(Date.class);
+		
+		double thrown = Latency.time(1000000, () -> {
+			try {
+				return reg.getSerializer(missing);
+			} catch (NotTypeIDException e) {
+				return e;
+			}
+		});
+		double found = Latency.time(1000000, () -> {
+			Serialize s = reg.findSerializer(missing);
+			return s == null ? reg : s;
+		});
+		
+		//массив незарегистрированного типа пишется по имени класса элемента
+		Packet p = new Packet();
+		p.add("dates", new Date[] { new Date(0), new Date(1) });
+		BinaryWriter writer = new BinaryWriter();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		double array = Latency.time(200000, () -> {
+			out.reset();
+			p.write((OutputStream)out, null, reg, writer);
+			return out;
+		});
+		
+		System.out.printf("getSerializer miss (exception):  %8.1f ns%n", thrown);
+		System.out.printf("findSerializer miss (null):      %8.1f ns%n", found);
+		System.out.printf("write packet with Date[] field:  %8.1f ns%n", array);
+	}
+}
@@ -0,0 +1,59 @@
+package benchmark;
+
+import packet.Packet;
+import utils.NamedList;
+
+/**
+ * операции {@link NamedList} и {@link Packet} на 10, 100 и 1000 полях<br />
+ * время одной операции в наносекундах (лучшее из нескольких замеров);
+ * на массивах доступ по индексу и список ключей по порядку не зависят от количества полей<br />
+ * запуск: java benchmark.NamedListBenchmark
+ * @author Ilya Sokolov
+ */
+public final class NamedListBenchmark {
+	private NamedListBenchmark() { }
+	
+	public static void main(String[] args) throws Exception {
+		System.out.printf("%-36s %12s %12s %12s%n", "ns/op", "10 fields", "100 fields", "1000 fields");
+		int[] sizes = { 10, 100, 1000 };
+		String[] names = {
+			"NamedList.get(int)", "NamedList.get(String)", "NamedList.getKeysSortedByIndex",
+			"NamedList.insert+remove (middle)", "Packet.get(String)", "new Packet(Packet)", "Packet add+remove+calculateDynamicID"
+		};
+		double[][] r = new double[names.length][sizes.length];
+		
+		for(int s = 0; s < sizes.length; ++s) {
+			int n = sizes[s];
+			int reps = 2000000 / n;
+			NamedList<Integer> list = new NamedList<>();
+			Packet p = new Packet();
+			String[] keys = new String[n];
+			for(int i = 0; i < n; ++i) {
+				keys[i] = "field" + i;
+				list.add(keys[i], i);
+				p.add(keys[i], i);
+			}
+			int[] next = new int[1];
+			
+			r[0][s] = Latency.time(reps, () -> list.get(next[0]++ % n));
+			r[1][s] = Latency.time(reps, () -> list.get(keys[next[0]++ % n]));
+			r[2][s] = Latency.time(reps, () -> list.getKeysSortedByIndex());
+			r[3][s] = Latency.time(reps, () -> {
+				list.insert("extra", -1, n / 2);
+				list.remove(n / 2);
+				return list;
+			});
+			r[4][s] = Latency.time(reps, () -> p.get(keys[next[0]++ % n]));
+			r[5][s] = Latency.time(reps, () -> new Packet(p));
+			r[6][s] = Latency.time(reps, () -> {
+				p.add("extra", 1);
+				p.remove("extra");
+				return p.calculateDynamicID();
+			});
+		}
+		
+		for(int i = 0; i < names.length; ++i) {
+			System.out.printf("%-36s %12.1f %12.1f %12.1f%n", names[i], r[i][0], r[i][1], r[i][2]);
+		}
+	}
+}
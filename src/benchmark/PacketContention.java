@@ -0,0 +1,46 @@
+package benchmark;
+
+import packet.Packet;
+
+/**
+ * конкурентные чтение и запись полей одного изменяемого пакета<br />
+ * каждая операция - чтение поля, каждая N-я операция потока - запись поля (put без изменения типа);
+ * замер для нескольких долей записи и ряда количеств потоков<br />
+ * запуск: java benchmark.PacketContention [наибольшее количество потоков] [мс на замер]
+ * @author Ilya Sokolov
+ */
+public final class PacketContention {
+	/**
+	 * полей пакета
+	 */
+	private static final int FIELDS = 16;
+	
+	private PacketContention() { }
+	
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		
+		Packet p = new Packet();
+		for(int i = 0; i < FIELDS; ++i) { p.add("f" + i, i); }
+		
+		//запись: каждая 1000-я, 100-я, 10-я, 2-я операция; 0 - только чтение
+		int[] writeEvery = { 0, 1000, 100, 10, 2 };
+		for(int every : writeEvery) {
+			//по 16 элементов на поток - счётчики потоков не делят строку кеша
+			int[][] counters = new int[maxThreads][16];
+			long[] sink = new long[maxThreads * 16];
+			String name = every == 0 ? "Packet reads only" : "Packet reads, 1 write per " + every + " ops";
+			Throughput.scaling(name, maxThreads, millis, thread -> {
+				int n = ++counters[thread][0];
+				int field = n % FIELDS;
+				if(every != 0 && n % every == 0) {
+					p.put(field, n & 0x7F);
+				}
+				else {
+					sink[thread * 16] += p.getInt(field);
+				}
+			});
+		}
+	}
+}
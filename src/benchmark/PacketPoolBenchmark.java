@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import packet.Packet;
+import packet.PacketIOException;
+import packet.PacketPool;
+import packet.Registry;
+import packet.nio.BufferReader;
+import packet.nio.BufferWriter;
+
+/**
+ * замер памяти, выделяемой на чтение одного пакета:
+ * новый пакет на каждое сообщение ({@link Packet#read}) и чтение через {@link PacketPool}<br />
+ * память считается по {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} текущего потока<br />
+ * запуск: java benchmark.PacketPoolBenchmark [количество сообщений]
+ * @author Ilya Sokolov
+ */
+public final class PacketPoolBenchmark {
+	/**
+	 * сообщений на прогрев
+	 */
+	private static final int WARMUP = 200000;
+	
+	private PacketPoolBenchmark() { }
+	
+	/**
+	 * одна операция чтения
+	 */
+	private interface Op {
+		/**
+		 * @return значение первого поля (чтобы чтение не было удалено JIT)
+		 * @throws PacketIOException
+		 */
+		long run() throws PacketIOException;
+	}
+	
+	/**
+	 * @param mx счётчик памяти потоков
+	 * @param op операция
+	 * @param count количество операций
+	 * @return байт на операцию
+	 * @throws PacketIOException
+	 */
+	private static double measure(com.sun.management.ThreadMXBean mx, Op op, int count) throws PacketIOException {
+		long sum = 0;
+		for(int i = 0; i < WARMUP; ++i) { sum += op.run(); }
+		
+		long thread = Thread.currentThread().getId();
+		long before = mx.getThreadAllocatedBytes(thread);
+		for(int i = 0; i < count; ++i) { sum += op.run(); }
+		long after = mx.getThreadAllocatedBytes(thread);
+		
+		if(sum == 42) { System.out.print(""); }
+		return (double)(after - before) / count;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		
+		Registry reg = new Registry();
+		Packet template = new Packet();
+		template.add("id", 1);
+		template.add("time", 2L);
+		template.add("value", 2.5);
+		template.add("flag", true);
+		
+		ByteBuffer buf = ByteBuffer.allocate(256);
+		template.write(buf, null, reg, new BufferWriter());
+		buf.flip();
+		
+		BufferReader reader = new BufferReader();
+		PacketPool pool = new PacketPool(reg);
+		ByteBuffer in = buf.duplicate();
+		
+		double plain = measure(mx, () -> {
+			in.position(0);
+			Packet p = template.read(in, reg, reader);
+			return p.getInt(0);
+		}, count);
+		double pooled = measure(mx, () -> {
+			in.position(0);
+			try(PacketPool.Lease l = pool.read(in, template, reader)) {
+				return l.packet().getInt(0);
+			}
+		}, count);
+		
+		System.out.printf("new packet: %.1f bytes/message%n", plain);
+		System.out.printf("pool:       %.1f bytes/message%n", pooled);
+	}
+}
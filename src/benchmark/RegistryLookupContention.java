@@ -0,0 +1,47 @@
+package benchmark;
+
+import packet.Packet;
+import packet.Registry;
+import packet.Serialize;
+
+/**
+ * конкурентный поиск сериалайзера по id типа ({@link Registry#getSerializer(int)}) из многих потоков<br />
+ * каждый поток ищет по кругу id базовых типов и нескольких пакетов; при чтении без блокировок
+ * ускорение растёт с количеством потоков до количества ядер и не падает при большем количестве потоков<br />
+ * запуск: java benchmark.RegistryLookupContention [наибольшее количество потоков] [мс на замер]
+ * @author Ilya Sokolov
+ */
+public final class RegistryLookupContention {
+	/**
+	 * поисков за одну операцию замера
+	 */
+	private static final int BATCH = 256;
+	
+	private RegistryLookupContention() { }
+	
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		
+		Registry reg = new Registry();
+		Class<?>[] builtins = {
+			Boolean.class, Byte.class, Character.class, Double.class, Float.class,
+			Integer.class, Long.class, Short.class, String.class, Object.class
+		};
+		int[] tids = new int[builtins.length + 8];
+		for(int i = 0; i < builtins.length; ++i) { tids[i] = Registry.calculateClassID(builtins[i]); }
+		for(int i = builtins.length; i < tids.length; ++i) {
+			Packet p = new Packet();
+			for(int f = 0; f <= i; ++f) { p.add("f" + f, f); }
+			reg.addType(p);
+			tids[i] = p.calculateDynamicID();
+		}
+		
+		Serialize[] sink = new Serialize[maxThreads];
+		Throughput.scaling("Registry.getSerializer x " + BATCH, maxThreads, millis, thread -> {
+			Serialize s = null;
+			for(int i = 0; i < BATCH; ++i) { s = reg.getSerializer(tids[i % tids.length]); }
+			sink[thread] = s;
+		});
+	}
+}
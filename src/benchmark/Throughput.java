@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * замер пропускной способности операции в нескольких потоках<br />
+ * каждый поток выполняет операцию в цикле заданное время, результат - сумма операций всех потоков в секунду
+ * @author Ilya Sokolov
+ */
+final class Throughput {
+	/**
+	 * операция замера
+	 */
+	interface Op {
+		/**
+		 * @param thread номер потока (0..threads-1), для состояния потока
+		 * @throws Exception ошибка прерывает замер
+		 */
+		void run(int thread) throws Exception;
+	}
+	
+	private Throughput() { }
+	
+	/**
+	 * @param threads количество потоков
+	 * @param millis время замера
+	 * @param op операция
+	 * @return операций в секунду по всем потокам
+	 * @throws InterruptedException
+	 */
+	static double measure(int threads, long millis, Op op) throws InterruptedException {
+		long[] counts = new long[threads];
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		AtomicBoolean stop = new AtomicBoolean(false);
+		Thread[] workers = new Thread[threads];
+		
+		for(int t = 0; t < threads; ++t) {
+			int thread = t;
+			workers[t] = new Thread(() -> {
+				long n = 0;
+				try {
+					start.await();
+					while(!stop.get()) {
+						op.run(thread);
+						++n;
+					}
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				} finally {
+					counts[thread] = n;
+					done.countDown();
+				}
+			});
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		stop.set(true);
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		
+		if(error.get() != null) { throw new RuntimeException(error.get()); }
+		long total = 0;
+		for(long n : counts) { total += n; }
+		return total * 1e9 / elapsed;
+	}
+	
+	/**
+	 * @param max наибольшее количество потоков
+	 * @return 1, 2, 4 ... до max включительно
+	 */
+	static int[] threadCounts(int max) {
+		int n = 1;
+		for(int t = 1; t < max; t <<= 1) { ++n; }
+		int[] r = new int[n];
+		for(int i = 0, t = 1; i < n; ++i, t <<= 1) { r[i] = Math.min(t, max); }
+		return r;
+	}
+	
+	/**
+	 * замер для ряда количеств потоков с выводом ускорения относительно одного потока
+	 * @param name название замера
+	 * @param maxThreads наибольшее количество потоков
+	 * @param millis время замера одного количества потоков
+	 * @param op операция
+	 * @throws InterruptedException
+	 */
+	static void scaling(String name, int maxThreads, long millis, Op op) throws InterruptedException {
+		//прогрев JIT: в одном и в нескольких потоках
+		for(int i = 0; i < 3; ++i) { measure(1, millis, op); }
+		measure(maxThreads, millis, op);
+		
+		double base = 0;
+		System.out.println(name + " (cores: " + Runtime.getRuntime().availableProcessors() + ")");
+		for(int threads : threadCounts(maxThreads)) {
+			double ops = measure(threads, millis, op);
+			if(threads == 1) { base = ops; }
+			System.out.printf("  threads %3d: %,14.0f ops/s  speedup %5.2f%n", threads, ops, ops / base);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package packet;
+
+/**
+ * читатель, перенаправляющий все вызовы другому читателю<br />
+ * базовый класс для читателей, меняющих кодирование части типов
+ * (переопределяются только нужные методы)
+ * @author Ilya Sokolov
+ * @param <ReadObjectType> тип объекта ввода/вывода
+ */
+public abstract class DelegateReader<ReadObjectType> implements Reader<ReadObjectType> {
+	/**
+	 * читатель, которому перенаправляются вызовы
+	 */
+	protected final Reader<ReadObjectType> m_Reader;
+	
+	/**
+	 * @param reader читатель, которому перенаправляются вызовы
+	 */
+	protected DelegateReader(Reader<ReadObjectType> reader) {
+		if(reader == null) { throw new NullPointerException(); }
+		m_Reader = reader;
+	}
+	
+	/**
+	 * @return читатель, которому перенаправляются вызовы
+	 */
+	public final Reader<ReadObjectType> getReader() { return m_Reader; }
+	
+	@Override
+	public void readBytes(ReadObjectType in, byte[] b) throws PacketIOException {
+		m_Reader.readBytes(in, b);
+	}
+	
+	@Override
+	public void readBytes(ReadObjectType in, byte[] b, int off, int len) throws PacketIOException {
+		m_Reader.readBytes(in, b, off, len);
+	}
+	
+	@Override
+	public boolean readBoolean(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readBoolean(in);
+	}
+	
+	@Override
+	public byte readByte(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readByte(in);
+	}
+	
+	@Override
+	public char readChar(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readChar(in);
+	}
+	
+	@Override
+	public double readDouble(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readDouble(in);
+	}
+	
+	@Override
+	public float readFloat(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readFloat(in);
+	}
+	
+	@Override
+	public int readInt(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readInt(in);
+	}
+	
+	@Override
+	public long readLong(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readLong(in);
+	}
+	
+	@Override
+	public short readShort(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readShort(in);
+	}
+	
+	@Override
+	public String readString(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readString(in);
+	}
+	
+	@Override
+	public <ObjectType> ObjectType readObject(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readObject(in);
+	}
+	
+	@Override
+	public long readVarLong(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readVarLong(in);
+	}
+	
+	@Override
+	public int readTypeID(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readTypeID(in);
+	}
+	
+	/**
+	 * перенаправляется вместе с {@link #readTypeID}: наследник, меняющий кодирование id типа,
+	 * переопределяет оба метода
+	 */
+	@Override
+	public Serialize readSerializer(ReadObjectType in, Registry reg) throws PacketIOException {
+		return m_Reader.readSerializer(in, reg);
+	}
+	
+	@Override
+	public Class<?> readClass(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readClass(in);
+	}
+	
+	@Override
+	public void readBooleans(ReadObjectType in, boolean[] b, int off, int len) throws PacketIOException {
+		m_Reader.readBooleans(in, b, off, len);
+	}
+	
+	@Override
+	public void readChars(ReadObjectType in, char[] b, int off, int len) throws PacketIOException {
+		m_Reader.readChars(in, b, off, len);
+	}
+	
+	@Override
+	public void readShorts(ReadObjectType in, short[] b, int off, int len) throws PacketIOException {
+		m_Reader.readShorts(in, b, off, len);
+	}
+	
+	@Override
+	public void readInts(ReadObjectType in, int[] b, int off, int len) throws PacketIOException {
+		m_Reader.readInts(in, b, off, len);
+	}
+	
+	@Override
+	public void readLongs(ReadObjectType in, long[] b, int off, int len) throws PacketIOException {
+		m_Reader.readLongs(in, b, off, len);
+	}
+	
+	@Override
+	public void readFloats(ReadObjectType in, float[] b, int off, int len) throws PacketIOException {
+		m_Reader.readFloats(in, b, off, len);
+	}
+	
+	@Override
+	public void readDoubles(ReadObjectType in, double[] b, int off, int len) throws PacketIOException {
+		m_Reader.readDoubles(in, b, off, len);
+	}
+}
@@ -0,0 +1,138 @@
+package packet;
+
+/**
+ * писатель, перенаправляющий все вызовы другому писателю<br />
+ * базовый класс для писателей, меняющих кодирование части типов
+ * (переопределяются только нужные методы)
+ * @author Ilya Sokolov
+ * @param <WriteObjectType> тип объекта ввода/вывода
+ */
+public abstract class DelegateWriter<WriteObjectType> implements Writer<WriteObjectType> {
+	/**
+	 * писатель, которому перенаправляются вызовы
+	 */
+	protected final Writer<WriteObjectType> m_Writer;
+	
+	/**
+	 * @param writer писатель, которому перенаправляются вызовы
+	 */
+	protected DelegateWriter(Writer<WriteObjectType> writer) {
+		if(writer == null) { throw new NullPointerException(); }
+		m_Writer = writer;
+	}
+	
+	/**
+	 * @return писатель, которому перенаправляются вызовы
+	 */
+	public final Writer<WriteObjectType> getWriter() { return m_Writer; }
+	
+	@Override
+	public void write(WriteObjectType out, byte[] b) throws PacketIOException {
+		m_Writer.write(out, b);
+	}
+	
+	@Override
+	public void write(WriteObjectType out, byte[] b, int off, int len) throws PacketIOException {
+		m_Writer.write(out, b, off, len);
+	}
+	
+	@Override
+	public void writeBoolean(WriteObjectType out, boolean v) throws PacketIOException {
+		m_Writer.writeBoolean(out, v);
+	}
+	
+	@Override
+	public void writeByte(WriteObjectType out, byte v) throws PacketIOException {
+		m_Writer.writeByte(out, v);
+	}
+	
+	@Override
+	public void writeChar(WriteObjectType out, char v) throws PacketIOException {
+		m_Writer.writeChar(out, v);
+	}
+	
+	@Override
+	public void writeDouble(WriteObjectType out, double v) throws PacketIOException {
+		m_Writer.writeDouble(out, v);
+	}
+	
+	@Override
+	public void writeFloat(WriteObjectType out, float v) throws PacketIOException {
+		m_Writer.writeFloat(out, v);
+	}
+	
+	@Override
+	public void writeInt(WriteObjectType out, int v) throws PacketIOException {
+		m_Writer.writeInt(out, v);
+	}
+	
+	@Override
+	public void writeLong(WriteObjectType out, long v) throws PacketIOException {
+		m_Writer.writeLong(out, v);
+	}
+	
+	@Override
+	public void writeShort(WriteObjectType out, short v) throws PacketIOException {
+		m_Writer.writeShort(out, v);
+	}
+	
+	@Override
+	public void writeString(WriteObjectType out, String v) throws PacketIOException {
+		m_Writer.writeString(out, v);
+	}
+	
+	@Override
+	public void writeObject(WriteObjectType out, Object v) throws PacketIOException {
+		m_Writer.writeObject(out, v);
+	}
+	
+	@Override
+	public void writeVarLong(WriteObjectType out, long v) throws PacketIOException {
+		m_Writer.writeVarLong(out, v);
+	}
+	
+	@Override
+	public void writeTypeID(WriteObjectType out, int tid) throws PacketIOException {
+		m_Writer.writeTypeID(out, tid);
+	}
+	
+	@Override
+	public void writeClassName(WriteObjectType out, Class<?> c) throws PacketIOException {
+		m_Writer.writeClassName(out, c);
+	}
+	
+	@Override
+	public void writeBooleans(WriteObjectType out, boolean[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeBooleans(out, v, off, len);
+	}
+	
+	@Override
+	public void writeChars(WriteObjectType out, char[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeChars(out, v, off, len);
+	}
+	
+	@Override
+	public void writeShorts(WriteObjectType out, short[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeShorts(out, v, off, len);
+	}
+	
+	@Override
+	public void writeInts(WriteObjectType out, int[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeInts(out, v, off, len);
+	}
+	
+	@Override
+	public void writeLongs(WriteObjectType out, long[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeLongs(out, v, off, len);
+	}
+	
+	@Override
+	public void writeFloats(WriteObjectType out, float[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeFloats(out, v, off, len);
+	}
+	
+	@Override
+	public void writeDoubles(WriteObjectType out, double[] v, int off, int len) throws PacketIOException {
+		m_Writer.writeDoubles(out, v, off, len);
+	}
+}
@@ -0,0 +1,51 @@
+package packet;
+
+import utils.NamedList.KeyNotFoundException;
+
+/**
+ * заранее найденный элемент пакета<br />
+ * хранит индекс элемента в схеме пакета, по которой создан
+ * ({@link Packet#fieldHandle(String)}); для пакетов с той же схемой
+ * (шаблон, его копии и прочитанные по нему пакеты) доступ - обращение к массиву
+ * без поиска по имени, для остальных пакетов элемент ищется по имени
+ * @author Ilya Sokolov
+ */
+public final class FieldHandle {
+	/**
+	 * имя элемента
+	 */
+	private final String m_Key;
+	/**
+	 * индекс элемента в m_Schema
+	 */
+	private final int m_Index;
+	/**
+	 * схема, в которой найден индекс
+	 */
+	private final PacketSchema m_Schema;
+
+	FieldHandle(String key, int index, PacketSchema schema) {
+		m_Key = key;
+		m_Index = index;
+		m_Schema = schema;
+	}
+
+	/**
+	 * @return имя элемента
+	 */
+	public final String getKey() { return m_Key; }
+
+	/**
+	 * @return индекс элемента в схеме, по которой создан
+	 */
+	public final int getIndex() { return m_Index; }
+
+	/**
+	 * @param schema схема пакета
+	 * @return индекс элемента в схеме
+	 * @throws KeyNotFoundException в схеме нет элемента с таким именем
+	 */
+	final int indexIn(PacketSchema schema) throws KeyNotFoundException {
+		return schema == m_Schema ? m_Index : schema.indexOf(m_Key);
+	}
+}
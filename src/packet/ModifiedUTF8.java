@@ -0,0 +1,109 @@
+package packet;
+
+import java.io.UTFDataFormatException;
+
+/**
+ * кодирование строк в modified UTF-8 (формат DataOutputStream.writeUTF)<br />
+ * общее для потоковых (packet.binary) и буферных (packet.nio) читателей/писателей<br />
+ * без состояния, безопасно для использования из нескольких потоков
+ * @author Ilya Sokolov
+ */
+public final class ModifiedUTF8 {
+	/**
+	 * максимальная длина закодированной строки
+	 */
+	public static final int MAX_LENGTH = 0xFFFF;
+
+	private ModifiedUTF8() { }
+
+	/**
+	 * @param s строка
+	 * @return длина строки в байтах после кодирования
+	 */
+	public static int encodedLength(String s) {
+		int strlen = s.length();
+		int utflen = strlen;
+		for(int i = 0; i < strlen; ++i) {
+			char c = s.charAt(i);
+			if(c >= 0x0080 || c == 0) { utflen += (c >= 0x0800) ? 2 : 1; }
+		}
+		return utflen;
+	}
+
+	/**
+	 * закодировать строку
+	 * @param s строка
+	 * @param dst массив, в который записываются байты
+	 * @param off смещение от начала массива
+	 * @return смещение после последнего записанного байта
+	 */
+	public static int encode(String s, byte[] dst, int off) {
+		int strlen = s.length();
+		for(int i = 0; i < strlen; ++i) {
+			char c = s.charAt(i);
+			if(c >= 0x0001 && c <= 0x007F) {
+				dst[off++] = (byte)c;
+			}
+			else if(c > 0x07FF) {
+				dst[off++] = (byte)(0xE0 | ((c >> 12) & 0x0F));
+				dst[off++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else {
+				dst[off++] = (byte)(0xC0 | ((c >> 6) & 0x1F));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return off;
+	}
+
+	/**
+	 * раскодировать строку
+	 * @param b массив байт
+	 * @param off смещение от начала массива
+	 * @param len количество байт
+	 * @return строка
+	 * @throws UTFDataFormatException
+	 */
+	public static String decode(byte[] b, int off, int len) throws UTFDataFormatException {
+		char[] chars = new char[len];
+		int pos = off;
+		int end = off + len;
+		int count = 0;
+		while(pos < end) {
+			int c = b[pos] & 0xFF;
+			switch(c >> 4) {
+				case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+					//0xxxxxxx
+					chars[count++] = (char)c;
+					pos += 1;
+					break;
+				case 12: case 13: {
+					//110x xxxx 10xx xxxx
+					if(pos + 2 > end) { throw new UTFDataFormatException("malformed input: partial character at end"); }
+					int c2 = b[pos + 1];
+					if((c2 & 0xC0) != 0x80) { throw new UTFDataFormatException("malformed input around byte " + (pos + 1 - off)); }
+					chars[count++] = (char)(((c & 0x1F) << 6) | (c2 & 0x3F));
+					pos += 2;
+					break;
+				}
+				case 14: {
+					//1110 xxxx 10xx xxxx 10xx xxxx
+					if(pos + 3 > end) { throw new UTFDataFormatException("malformed input: partial character at end"); }
+					int c2 = b[pos + 1];
+					int c3 = b[pos + 2];
+					if(((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80)) {
+						throw new UTFDataFormatException("malformed input around byte " + (pos + 1 - off));
+					}
+					chars[count++] = (char)(((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+					pos += 3;
+					break;
+				}
+				default:
+					//10xx xxxx, 1111 xxxx
+					throw new UTFDataFormatException("malformed input around byte " + (pos - off));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
@@ -1,15 +1,14 @@
 package packet;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
 
 import packet.Registry.DynamicIDTypeArrayException;
 import packet.Registry.IsMultiLevelArrayException;
-import packet.Registry.NotTypeIDException;
 import utils.DeepCopy;
 import utils.DeepCopy.Clone;
-import utils.NamedList;
 import utils.NamedList.DuplicateKeyException;
 import utils.NamedList.KeyNotFoundException;
 import utils.Pair;
@@ -21,265 +20,1331 @@ import utils.Pair;
  */
 public final class Packet implements Clone, DynamicID, Serialize {
 	/**
-	 * флаг перед полем объект<br />
-	 * не примитивный объект<br />
-	 * не записан == null
+	 * хранение элементов в списке
+	 */
+	public static final class Field {
+		public final Object Value;
+		public final Class<?> TypeClass;
+		
+		public <T> Field(T value, Class<?> clazz) {
+			Value = value;
+			TypeClass = clazz;
+		}
+	}
+	/**
+	 * попытка изменить замороженный пакет ({@link Packet#freeze()})
+	 */
+	@SuppressWarnings("serial")
+	public static final class FrozenPacketException extends UnsupportedOperationException {
+		public FrozenPacketException() { super(); }
+	}
+	/**
+	 * пустой массив значений
+	 */
+	private static final Object[] EMPTY_VALUES = new Object[0];
+	/**
+	 * значение элемента лежит в m_Slots
+	 */
+	static final Object PRESENT = new Object();
+	/**
+	 * начальная ёмкость массивов значений при добавлении элементов
+	 */
+	private static final int DEFAULT_CAPACITY = 4;
+	/**
+	 * схема пакета: имена и типы элементов по индексу<br />
+	 * пока схема не опубликована ({@link PacketSchema#share()}), изменения структуры
+	 * меняют её на месте; опубликованная схема не изменяется и разделяется между шаблоном,
+	 * его копиями и прочитанными по нему пакетами, изменение структуры начинается с её копии
+	 */
+	private PacketSchema m_Schema = PacketSchema.EMPTY;
+	/**
+	 * значения элементов по индексу схемы<br />
+	 * может содержать значение нуль, если объект является шаблоном реального пакета<br />
+	 * PRESENT - примитивное значение лежит в m_Slots<br />
+	 * длина может быть больше размера схемы (запас для добавления), элементы за ним - null
+	 */
+	private Object[] m_Values = EMPTY_VALUES;
+	/**
+	 * примитивные значения без упаковки (см. {@link PacketSchema#toSlot})<br />
+	 * null - ни одного примитивного значения, иначе длина совпадает с m_Values
+	 */
+	private long[] m_Slots = null;
+	/**
+	 * блокировка: писатели - монопольно, читатели - оптимистически без блокировки
+	 * с повтором под блокировкой читателя при конфликте с писателем<br />
+	 * не реентерабельна: под блокировкой не вызывать открытые методы этого же пакета
+	 */
+	private final StampedLock m_Lock = new StampedLock();
+	/**
+	 * пакет заморожен: не изменяется, читается без блокировки<br />
+	 * устанавливается под блокировкой писателя после всех изменений,
+	 * поэтому прочитавший true видит окончательное состояние пакета
+	 */
+	private volatile boolean m_Frozen = false;
+	
+	/**
+	 * кеш динамического id<br />
+	 * действителен, пока не изменилась структура пакета, а если в нём есть вложенные пакеты -
+	 * пока не изменилась структура ни одного вложенного пакета ({@link Packet#NESTED_EPOCH});
+	 * проверка не обходит вложенные пакеты
+	 */
+	private static final class DynamicIDCache {
+		/**
+		 * рассчитанный id
+		 */
+		final int ID;
+		/**
+		 * номер изменения структуры, на котором рассчитан id
+		 */
+		final int Modification;
+		/**
+		 * среди значений есть вложенные пакеты
+		 */
+		final boolean HasNested;
+		/**
+		 * NESTED_EPOCH на момент расчёта (если есть вложенные пакеты)
+		 */
+		final int NestedEpoch;
+		
+		DynamicIDCache(int id, int modification, boolean hasNested, int nestedEpoch) {
+			ID = id;
+			Modification = modification;
+			HasNested = hasNested;
+			NestedEpoch = nestedEpoch;
+		}
+		
+		/**
+		 * @param modification текущий номер изменения структуры
+		 * @return true - кеш действителен
+		 */
+		boolean isValid(int modification) {
+			return Modification == modification && (!HasNested || NestedEpoch == NESTED_EPOCH.get());
+		}
+	}
+	/**
+	 * номер изменения структуры вложенных пакетов<br />
+	 * увеличивается при изменении структуры пакета, который был вложенным значением
+	 * при расчёте id другого пакета; кеши id пакетов с вложенными пакетами при этом
+	 * сбрасываются все сразу (изменение структуры вложенного пакета - редкое событие)
+	 */
+	private static final AtomicInteger NESTED_EPOCH = new AtomicInteger();
+	/**
+	 * пакет был вложенным значением при расчёте динамического id другого пакета
+	 * (его изменение структуры увеличивает {@link #NESTED_EPOCH})
+	 */
+	private volatile boolean m_Nested = false;
+	/**
+	 * номер изменения структуры пакета<br />
+	 * увеличивается при добавлении/вставке/удалении полей и при put, меняющем тип поля
+	 */
+	private volatile int m_Modification = 0;
+	/**
+	 * кеш динамического id
+	 */
+	private volatile DynamicIDCache m_DynamicIDCache = null;
+	
+	/**
+	 * список классов
+	 */
+	public static final Class<?>[] classes = new Class<?>[] { Packet.class };
+	
+	/**
+	 * конструктор<br />
+	 * создаёт пустой объект
+	 */
+	public Packet() { }
+	/**
+	 * копирующий конструктор
+	 * @param p объект копирования
+	 * @throws DeepCopyNotSupportException 
+	 */
+	public Packet(Packet p) throws CloneNotSupportedException {
+		if(p.m_Frozen) {
+			copyFrom(p);
+			return;
+		}
+		
+		long stamp = p.m_Lock.readLock();
+		
+		try {
+			copyFrom(p);
+		}
+		finally {
+			p.m_Lock.unlockRead(stamp);
+		}
+	}
+	/**
+	 * скопировать значения пакета (под блокировкой читателя p или p заморожен)<br />
+	 * схема публикуется и разделяется, копируются только значения
+	 * @param p объект копирования
+	 * @throws CloneNotSupportedException
+	 */
+	private final void copyFrom(Packet p) throws CloneNotSupportedException {
+		PacketSchema schema = p.m_Schema.share();
+		Object[] values = new Object[schema.size()];
+		for(int i = 0; i < values.length; ++i) {
+			Object v = p.m_Values[i];
+			values[i] = v == null || v == PRESENT ? v : DeepCopy.copy(v);
+		}
+		m_Schema = schema;
+		m_Values = values;
+		m_Slots = p.m_Slots != null ? Arrays.copyOf(p.m_Slots, values.length) : null;
+	}
+	/**
+	 * пакет с готовыми значениями по схеме шаблона<br />
+	 * для чтения пакета кодеком: схема не копируется, значения не клонируются
+	 * @param schema схема шаблона
+	 * @param values значения (массив становится собственностью пакета)
+	 * @param slots примитивные значения для элементов PRESENT или null
+	 */
+	Packet(PacketSchema schema, Object[] values, long[] slots) {
+		m_Schema = schema;
+		m_Values = values;
+		m_Slots = slots;
+	}
+	/**
+	 * добавить массив именованных элементов
+	 * @param newArrItems массив элементов
+	 * @throws DuplicateKeyException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 * @throws NullPointerException 
+	 */
+	public <T> Packet(Pair<String, T>[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException { 
+		add(newArrItems);
+	}
+	
+	/**
+	 * @param value элемент или {@link Field}
+	 * @return тип элемента
+	 */
+	private static <T> Class<?> typeOf(T value) {
+		if(value instanceof Field) { return ((Field)value).TypeClass; }
+		return value.getClass(); 
+	}
+	
+	/**
+	 * @param value элемент или {@link Field}
+	 * @return значение элемента
+	 */
+	private static <T> Object valueOf(T value) {
+		if(value instanceof Field) { return ((Field)value).Value; }
+		return value; 
+	}
+	
+	/**
+	 * записать значение элемента, примитив - в слот без упаковки
+	 * @param index индекс элемента
+	 * @param value значение
+	 */
+	private final void store(int index, Object value) {
+		byte kind = m_Schema.Kinds[index];
+		if(kind != PacketSchema.REFERENCE && value != null && value.getClass() == PacketSchema.WRAPPERS[kind]) {
+			if(m_Slots == null) { m_Slots = new long[m_Values.length]; }
+			m_Slots[index] = PacketSchema.toSlot(kind, value);
+			m_Values[index] = PRESENT;
+		}
+		else {
+			m_Values[index] = value;
+		}
+	}
+	
+	/**
+	 * @param index индекс элемента
+	 * @return значение элемента (примитив из слота упаковывается)
+	 */
+	private final Object value(int index) {
+		checkIndex(index);
+		Object v = m_Values[index];
+		return v == PRESENT ? PacketSchema.fromSlot(m_Schema.Kinds[index], m_Slots[index]) : v;
+	}
+	
+	/**
+	 * @param index индекс элемента
+	 * @return класс значения элемента или null
+	 */
+	private final Class<?> valueClass(int index) {
+		Object v = m_Values[index];
+		if(v == PRESENT) { return PacketSchema.WRAPPERS[m_Schema.Kinds[index]]; }
+		return v != null ? v.getClass() : null;
+	}
+	
+	/**
+	 * @param index индекс элемента
+	 * @throws IndexOutOfBoundsException индекс вне схемы (массивы значений могут быть длиннее)
+	 */
+	private final void checkIndex(int index) {
+		if(index < 0 || index >= m_Schema.size()) { throw new IndexOutOfBoundsException(); }
+	}
+	
+	/**
+	 * обеспечить ёмкость массивов значений (под блокировкой писателя)
+	 * @param size требуемое количество элементов
+	 */
+	private final void ensureCapacity(int size) {
+		if(size <= m_Values.length) { return; }
+		int capacity = Math.max(Math.max(DEFAULT_CAPACITY, m_Values.length * 2), size);
+		m_Values = Arrays.copyOf(m_Values, capacity);
+		if(m_Slots != null) { m_Slots = Arrays.copyOf(m_Slots, capacity); }
+	}
+	
+	/**
+	 * @throws FrozenPacketException пакет заморожен
+	 */
+	private final void checkMutable() {
+		if(m_Frozen) { throw new FrozenPacketException(); }
+	}
+	
+	/**
+	 * заморозить пакет<br />
+	 * после заморозки элементы не добавляются, не удаляются и не заменяются
+	 * ({@link FrozenPacketException}), чтение идёт без блокировки,
+	 * clone() возвращает сам пакет - его можно разделять между потоками без копирования<br />
+	 * вложенные пакеты замораживаются вместе с ним; прочие изменяемые значения
+	 * (массивы, объекты) не защищены, их нельзя менять после публикации
+	 * @return этот пакет
+	 */
+	public final Packet freeze() {
+		if(m_Frozen) { return this; }
+		Object[] values;
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			m_Frozen = true;
+			values = m_Values;
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+		//вложенные - вне блокировки (блокировка не реентерабельна, пакет может ссылаться на себя)
+		for(Object v : values) {
+			if(v instanceof Packet) { ((Packet)v).freeze(); }
+		}
+		return this;
+	}
+	
+	/**
+	 * @return true - пакет заморожен ({@link #freeze()})
+	 */
+	public final boolean isFrozen() {
+		return m_Frozen;
+	}
+	
+	/**
+	 * отметить изменение структуры пакета - сбросить кеш динамического id
+	 */
+	private final void structureChanged() {
+		++m_Modification;
+		if(m_Nested) { NESTED_EPOCH.incrementAndGet(); }
+	}
+	
+	/**
+	 * @param oc класс старого значения поля или null
+	 * @param nv новое значение поля
+	 * @return true - замена значения меняет динамический id
+	 */
+	private static boolean isStructuralChange(Class<?> oc, Object nv) {
+		if((oc == null) != (nv == null)) { return true; }
+		if(nv instanceof DynamicID || (oc != null && DynamicID.class.isAssignableFrom(oc))) { return true; }
+		return oc != null && oc != nv.getClass();
+	}
+	
+	/**
+	 * добавить новый элемент<br />
+	 * имя будет соответствовать индексу, добавляемого элемента
+	 * @param newItem элемент
+	 * @throws DuplicateKeyException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 * @throws NullPointerException 
+	 */
+	public final <T> void add(T newItem) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			m_Schema = m_Schema.add(typeOf(newItem));
+			append(valueOf(newItem));
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * записать значение элемента, добавленного в конец схемы (под блокировкой писателя)<br />
+	 * массивы значений растут с запасом - добавление N элементов O(N)
+	 * @param value значение добавленного элемента
+	 */
+	private final void append(Object value) {
+		int n = m_Schema.size();
+		ensureCapacity(n);
+		store(n - 1, value);
+		structureChanged();
+	}
+	
+	/**
+	 * добавить массив новых элементов<br />
+	 * имя будет соответствовать индексу добавляемого элемента
+	 * @param newArrItems массив элемнтов
+	 * @throws DuplicateKeyException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 * @throws NullPointerException 
+	 */
+	public final <T> void addAll(T[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		for(T item : newArrItems) { add(item); }
+	}
+	
+	/**
+	 * добавить новый именованных элемент
+	 * @param key имя (ключ)
+	 * @param item элемент
+	 * @throws DuplicateKeyException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 */
+	public final <T> void add(String key, T item) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			if(item == null) { throw new NullPointerException(); }
+			m_Schema = m_Schema.add(key, typeOf(item));
+			append(valueOf(item));
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * добавить массив именованных элементов
+	 * @param newArrItems массив элементов
+	 * @throws DuplicateKeyException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 * @throws NullPointerException 
+	 */
+	public final <T> void addAll(Pair<String, T>[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		for(Pair<String, T> item : newArrItems) { add(item.getFirst(), item.getSecond()); }
+	}
+	
+	/**
+	 * вставить новый элемент на указанную позицию
+	 * @param newItem новый элемент
+	 * @param index позиция для вставки
+	 * @throws DuplicateKeyException
+	 * @throws IndexOutOfBoundsException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 */
+	public final <T> void insert(T newItem, int index) throws DuplicateKeyException, IndexOutOfBoundsException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		insert(Integer.toString(index), newItem, index);
+	}
+	
+	/**
+	 * вставить новый именованный элемент на указанную позицию
+	 * @param key имя (ключ)
+	 * @param newItem вставляемый элемент
+	 * @param index позиция для вставки
+	 * @throws DuplicateKeyException
+	 * @throws IndexOutOfBoundsException
+	 * @throws DynamicIDTypeArrayException 
+	 * @throws IsMultiLevelArrayException 
+	 */
+	public final <T> void insert(String key, T newItem, int index) throws DuplicateKeyException, IndexOutOfBoundsException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			if(newItem == null) { throw new NullPointerException(); }
+			int n = m_Schema.size();
+			m_Schema = m_Schema.insert(key, typeOf(newItem), index);
+			ensureCapacity(n + 1);
+			System.arraycopy(m_Values, index, m_Values, index + 1, n - index);
+			if(m_Slots != null) { System.arraycopy(m_Slots, index, m_Slots, index + 1, n - index); }
+			m_Values[index] = null;
+			store(index, valueOf(newItem));
+			structureChanged();
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * получить элемнт по индексу
+	 * @param index индекс элемнта
+	 * @return требуемый элемент
+	 * @throws IndexOutOfBoundsException
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> T get(int index) throws IndexOutOfBoundsException {
+		return (T)readValue(index);
+	}
+	
+	/**
+	 * получить элемент по имени
+	 * @param key имя (ключ) элемента
+	 * @return требуемый элемент
+	 * @throws KeyNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> T get(String key) throws KeyNotFoundException {
+		return (T)readValue(key);
+	}
+	
+	/**
+	 * найти элемент для повторного доступа без поиска по имени
+	 * @param key имя (ключ) элемента
+	 * @return описатель элемента
+	 * @throws KeyNotFoundException
+	 */
+	public final FieldHandle fieldHandle(String key) throws KeyNotFoundException {
+		PacketSchema schema = schema();
+		return new FieldHandle(key, schema.indexOf(key), schema);
+	}
+	
+	/**
+	 * получить элемент по описателю
+	 * @param h описатель элемента
+	 * @return требуемый элемент
+	 * @throws KeyNotFoundException описатель другой схемы и элемента с его именем нет
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> T get(FieldHandle h) throws KeyNotFoundException {
+		return (T)readValue(h);
+	}
+	
+	/**
+	 * значение по индексу: оптимистическое чтение без блокировки,
+	 * при конфликте с писателем - повтор под блокировкой читателя<br />
+	 * исключение при несогласованном (изменяемом писателем) состоянии также ведёт к повтору
+	 * @param index индекс элемента
+	 * @return значение элемента
+	 */
+	private final Object readValue(int index) {
+		if(m_Frozen) { return value(index); }
+		
+		long stamp = m_Lock.tryOptimisticRead();
+		if(stamp != 0) {
+			try {
+				Object v = value(index);
+				if(m_Lock.validate(stamp)) { return v; }
+			} catch (RuntimeException e) {
+				if(m_Lock.validate(stamp)) { throw e; }
+			}
+		}
+		stamp = m_Lock.readLock();
+		
+		try {
+			return value(index);
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * значение по имени (см. {@link #readValue(int)})<br />
+	 * без блокировки ключ ищется только в опубликованной схеме: она не изменяется на месте,
+	 * а схему, которую писатель меняет на месте, читать можно только под блокировкой
+	 * @param key имя (ключ) элемента
+	 * @return значение элемента
+	 * @throws KeyNotFoundException
+	 */
+	private final Object readValue(String key) throws KeyNotFoundException {
+		if(m_Frozen) { return value(m_Schema.indexOf(key)); }
+		
+		long stamp = m_Lock.tryOptimisticRead();
+		PacketSchema schema = m_Schema;
+		if(stamp != 0 && schema.isShared()) {
+			try {
+				Object v = value(schema.indexOf(key));
+				if(m_Lock.validate(stamp)) { return v; }
+			} catch (RuntimeException|KeyNotFoundException e) {
+				if(m_Lock.validate(stamp)) { throw e; }
+			}
+		}
+		stamp = m_Lock.readLock();
+		
+		try {
+			return value(m_Schema.indexOf(key));
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * значение по описателю (см. {@link #readValue(int)})
+	 * @param h описатель элемента
+	 * @return значение элемента
+	 * @throws KeyNotFoundException
+	 */
+	private final Object readValue(FieldHandle h) throws KeyNotFoundException {
+		if(m_Frozen) { return value(h.indexIn(m_Schema)); }
+		
+		long stamp = m_Lock.tryOptimisticRead();
+		PacketSchema schema = m_Schema;
+		if(stamp != 0 && schema.isShared()) {
+			try {
+				Object v = value(h.indexIn(schema));
+				if(m_Lock.validate(stamp)) { return v; }
+			} catch (RuntimeException|KeyNotFoundException e) {
+				if(m_Lock.validate(stamp)) { throw e; }
+			}
+		}
+		stamp = m_Lock.readLock();
+		
+		try {
+			return value(h.indexIn(m_Schema));
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * примитивное значение по индексу (см. {@link #readValue(int)}, {@link #getSlot})
+	 * @param index индекс элемента
+	 * @param kind требуемый вид элемента
+	 * @return слот
+	 */
+	private final long readSlot(int index, byte kind) {
+		if(m_Frozen) { return getSlot(index, kind); }
+		
+		long stamp = m_Lock.tryOptimisticRead();
+		if(stamp != 0) {
+			try {
+				long v = getSlot(index, kind);
+				if(m_Lock.validate(stamp)) { return v; }
+			} catch (RuntimeException e) {
+				if(m_Lock.validate(stamp)) { throw e; }
+			}
+		}
+		stamp = m_Lock.readLock();
+		
+		try {
+			return getSlot(index, kind);
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * примитивное значение по имени (см. {@link #readValue(int)}, {@link #getSlot})
+	 * @param key имя (ключ) элемента
+	 * @param kind требуемый вид элемента
+	 * @return слот
+	 * @throws KeyNotFoundException
+	 */
+	private final long readSlot(String key, byte kind) throws KeyNotFoundException {
+		if(m_Frozen) { return getSlot(m_Schema.indexOf(key), kind); }
+		
+		long stamp = m_Lock.tryOptimisticRead();
+		PacketSchema schema = m_Schema;
+		if(stamp != 0 && schema.isShared()) {
+			try {
+				long v = getSlot(schema.indexOf(key), kind);
+				if(m_Lock.validate(stamp)) { return v; }
+			} catch (RuntimeException|KeyNotFoundException e) {
+				if(m_Lock.validate(stamp)) { throw e; }
+			}
+		}
+		stamp = m_Lock.readLock();
+		
+		try {
+			return getSlot(m_Schema.indexOf(key), kind);
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * прочитать значения кодеком в массивы этого пакета (под блокировкой писателя)<br />
+	 * пакет получает схему кодека, массивы переиспользуются, если совпадают по размеру со схемой
+	 * @param codec кодек
+	 * @param in объект для чтения
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @throws PacketIOException
+	 * @throws FrozenPacketException пакет заморожен
+	 */
+	final <ReadObjectType> void decode(PacketCodec codec, ReadObjectType in, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			PacketSchema schema = codec.schema();
+			int size = schema.size();
+			if(m_Values.length != size) {
+				m_Values = size > 0 ? new Object[size] : EMPTY_VALUES;
+				m_Slots = null;
+			}
+			if(codec.hasSlots() && m_Slots == null) { m_Slots = new long[size]; }
+			m_Schema = schema;
+			//типы значений могли измениться - динамический id пересчитывается
+			structureChanged();
+			codec.decode(in, m_Values, m_Slots, reg, reader);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * значение по индексу без блокировки<br />
+	 * для кодека пакета, вызывающий держит блокировку читателя или пакет заморожен
+	 * @param index индекс элемента
+	 * @return значение или PRESENT (значение в {@link #slotAt})
+	 */
+	final Object valueAt(int index) {
+		return m_Values[index];
+	}
+	
+	/**
+	 * примитивное значение по индексу без блокировки<br />
+	 * для кодека пакета (блокировка как у {@link #valueAt}), действительно если valueAt(index) == PRESENT
+	 * @param index индекс элемента
+	 * @return слот
+	 */
+	final long slotAt(int index) {
+		return m_Slots[index];
+	}
+	
+	/**
+	 * скомпилировать кодек по этому пакету как шаблону<br />
+	 * динамический id, схема и значения берутся под одной блокировкой читателя,
+	 * поэтому сериалайзеры кодека соответствуют его id
+	 * @param reg реестр типов
+	 * @return кодек
+	 */
+	final PacketCodec compileCodec(Registry reg) {
+		if(m_Frozen) { return new PacketCodec(dynamicID(), m_Schema.share(), m_Values, reg); }
+		
+		long stamp = m_Lock.readLock();
+		
+		try {
+			return new PacketCodec(dynamicID(), m_Schema.share(), m_Values, reg);
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * @return текущая схема пакета, опубликованная (неизменяемая)
+	 */
+	final PacketSchema schema() {
+		if(m_Frozen) { return m_Schema.share(); }
+		
+		//уже опубликованная схема возвращается без блокировки; изменяемую публикуем только
+		//под блокировкой - иначе писатель, уже меняющий её на месте, продолжил бы менять опубликованную
+		long stamp = m_Lock.tryOptimisticRead();
+		PacketSchema r = m_Schema;
+		if(r.isShared() && m_Lock.validate(stamp)) { return r; }
+		
+		stamp = m_Lock.readLock();
+		
+		try {
+			return m_Schema.share();
+		}
+		finally {
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * установить значение по индексу
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
+	 */
+	public final <T> void put(int index, T v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			set(index, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * установить значение по ключу
+	 * @param key ключ
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
 	 */
-	private static final byte IS_NULL_VALUE = 1;
+	public final <T> void put(String key, T v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			set(m_Schema.indexOf(key), v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * установить значение по описателю элемента
+	 * @param h описатель элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException описатель другой схемы и элемента с его именем нет
+	 */
+	public final <T> void put(FieldHandle h, T v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			set(h.indexIn(m_Schema), v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * заменить значение, при смене типа заменить схему
+	 * @param index индекс элемента
+	 * @param v новое значение или {@link Field}
+	 */
+	private final <T> void set(int index, T v) {
+		Class<?> type = typeOf(v);
+		Object value = valueOf(v);
+		if(m_Schema.Types.get(index) != type) {
+			m_Schema = m_Schema.put(type, index);
+			structureChanged();
+		}
+		else if(isStructuralChange(valueClass(index), value)) { structureChanged(); }
+		store(index, value);
+	}
+	
+	/**
+	 * примитивное значение элемента (под блокировкой или при оптимистическом чтении)
+	 * @param index индекс элемента
+	 * @param kind требуемый вид элемента
+	 * @return слот (см. {@link PacketSchema#toSlot})
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	private final long getSlot(int index, byte kind) {
+		checkIndex(index);
+		Object v = m_Values[index];
+		if(v == PRESENT) {
+			if(m_Schema.Kinds[index] == kind) { return m_Slots[index]; }
+			v = PacketSchema.fromSlot(m_Schema.Kinds[index], m_Slots[index]);
+		}
+		return PacketSchema.toSlot(kind, v);
+	}
+	
+	/**
+	 * записать примитивное значение элемента (под блокировкой писателя)<br />
+	 * элемент того же примитивного типа хранится в слоте без упаковки,
+	 * иначе значение упаковывается и записывается как через put
+	 * @param index индекс элемента
+	 * @param kind вид значения
+	 * @param slot слот (см. {@link PacketSchema#toSlot})
+	 */
+	private final void putSlot(int index, byte kind, long slot) {
+		checkIndex(index);
+		if(m_Schema.Kinds[index] != kind) {
+			set(index, PacketSchema.fromSlot(kind, slot));
+			return;
+		}
+		Object old = m_Values[index];
+		if(old != PRESENT && (old == null || old.getClass() != PacketSchema.WRAPPERS[kind])) { structureChanged(); }
+		if(m_Slots == null) { m_Slots = new long[m_Values.length]; }
+		m_Slots[index] = slot;
+		m_Values[index] = PRESENT;
+	}
+	
+	/**
+	 * получить boolean по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final boolean getBoolean(int index) throws IndexOutOfBoundsException {
+		return readSlot(index, PacketSchema.BOOLEAN) != 0;
+	}
+	
+	/**
+	 * получить boolean по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final boolean getBoolean(String key) throws KeyNotFoundException {
+		return readSlot(key, PacketSchema.BOOLEAN) != 0;
+	}
+	
+	/**
+	 * установить boolean по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
+	 */
+	public final void putBoolean(int index, boolean v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(index, PacketSchema.BOOLEAN, v ? 1 : 0);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * установить boolean по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
+	 */
+	public final void putBoolean(String key, boolean v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.BOOLEAN, v ? 1 : 0);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * получить byte по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final byte getByte(int index) throws IndexOutOfBoundsException {
+		return (byte)readSlot(index, PacketSchema.BYTE);
+	}
+	
+	/**
+	 * получить byte по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final byte getByte(String key) throws KeyNotFoundException {
+		return (byte)readSlot(key, PacketSchema.BYTE);
+	}
+	
+	/**
+	 * установить byte по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
+	 */
+	public final void putByte(int index, byte v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(index, PacketSchema.BYTE, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
 	/**
-	 * флаг перед полем объект<br />
-	 * не примитивный объект<br />
-	 * записан != null
+	 * установить byte по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
+	 */
+	public final void putByte(String key, byte v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.BYTE, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * получить char по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final char getChar(int index) throws IndexOutOfBoundsException {
+		return (char)readSlot(index, PacketSchema.CHAR);
+	}
+	
+	/**
+	 * получить char по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final char getChar(String key) throws KeyNotFoundException {
+		return (char)readSlot(key, PacketSchema.CHAR);
+	}
+	
+	/**
+	 * установить char по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
 	 */
-	private static final byte IS_NOT_NULL_VALUE = 2;
+	public final void putChar(int index, char v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(index, PacketSchema.CHAR, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
 	
 	/**
-	 * хранение элементов в списке
+	 * установить char по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
 	 */
-	public static final class Field {
-		public final Object Value;
-		public final Class<?> TypeClass;
+	public final void putChar(String key, char v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
 		
-		public <T> Field(T value, Class<?> clazz) {
-			Value = value;
-			TypeClass = clazz;
+		try {
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.CHAR, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
 		}
 	}
+	
 	/**
-	 * список элементов данных<br />
-	 * может содержать значение нуль, если объект является шаблоном реального пакета
-	 */
-	private final NamedList<Pair<Class<?>, Object>> m_NamedList = new NamedList<>();
-	/**
-	 * read/write блокировка
-	 */
-	private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
-	/**
-	 * блокировка для читателей
+	 * получить short по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	private final Lock m_rLock = m_rwLock.readLock();
+	public final short getShort(int index) throws IndexOutOfBoundsException {
+		return (short)readSlot(index, PacketSchema.SHORT);
+	}
+	
 	/**
-	 * блокировка для писателей
+	 * получить short по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	private final Lock m_wLock = m_rwLock.writeLock();
+	public final short getShort(String key) throws KeyNotFoundException {
+		return (short)readSlot(key, PacketSchema.SHORT);
+	}
 	
 	/**
-	 * список классов
+	 * установить short по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
 	 */
-	public static final Class<?>[] classes = new Class<?>[] { Packet.class };
+	public final void putShort(int index, short v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(index, PacketSchema.SHORT, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
 	
 	/**
-	 * конструктор<br />
-	 * создаёт пустой объект
+	 * установить short по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
 	 */
-	public Packet() { }
+	public final void putShort(String key, short v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.SHORT, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
+	}
+	
 	/**
-	 * копирующий конструктор
-	 * @param p объект копирования
-	 * @throws DeepCopyNotSupportException 
+	 * получить int по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public Packet(Packet p) throws CloneNotSupportedException {
-		String[] keys = p.getKeysSortedByIndex();
-		for(String key : keys) {
-			try {
-				add(key, DeepCopy.copy(p.get(key)));
-			} catch (DuplicateKeyException | NullPointerException | IsMultiLevelArrayException
-					| DynamicIDTypeArrayException | KeyNotFoundException e) {
-				//будем считать что объект внутренне согласован
-			}
-		}
+	public final int getInt(int index) throws IndexOutOfBoundsException {
+		return (int)readSlot(index, PacketSchema.INT);
 	}
+	
 	/**
-	 * добавить массив именованных элементов
-	 * @param newArrItems массив элементов
-	 * @throws DuplicateKeyException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
-	 * @throws NullPointerException 
+	 * получить int по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public <T> Packet(Pair<String, T>[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException { 
-		add(newArrItems);
+	public final int getInt(String key) throws KeyNotFoundException {
+		return (int)readSlot(key, PacketSchema.INT);
 	}
 	
-	private final <T> Pair<Class<?>, Object> field2pair(T value) {
-		if(value instanceof Field) {
-			Field f = (Field)value;
-			return new Pair<>(f.TypeClass, f.Value);
+	/**
+	 * установить int по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
+	 */
+	public final void putInt(int index, int v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(index, PacketSchema.INT, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
 		}
-		return new Pair<>(value.getClass(), value); 
 	}
 	
 	/**
-	 * добавить новый элемент<br />
-	 * имя будет соответствовать индексу, добавляемого элемента
-	 * @param newItem элемент
-	 * @throws DuplicateKeyException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
-	 * @throws NullPointerException 
+	 * установить int по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
 	 */
-	public final <T> void add(T newItem) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		m_wLock.lock();
+	public final void putInt(String key, int v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.add(field2pair(newItem));
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.INT, v);
 		}
 		finally {
-			m_wLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
 	/**
-	 * добавить массив новых элементов<br />
-	 * имя будет соответствовать индексу добавляемого элемента
-	 * @param newArrItems массив элемнтов
-	 * @throws DuplicateKeyException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
-	 * @throws NullPointerException 
+	 * получить long по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public final <T> void addAll(T[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		for(T item : newArrItems) { add(item); }
+	public final long getLong(int index) throws IndexOutOfBoundsException {
+		return readSlot(index, PacketSchema.LONG);
 	}
 	
 	/**
-	 * добавить новый именованных элемент
-	 * @param key имя (ключ)
-	 * @param item элемент
-	 * @throws DuplicateKeyException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
+	 * получить long по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public final <T> void add(String key, T item) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		m_wLock.lock();
+	public final long getLong(String key) throws KeyNotFoundException {
+		return readSlot(key, PacketSchema.LONG);
+	}
+	
+	/**
+	 * установить long по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
+	 * @throws IndexOutOfBoundsException
+	 */
+	public final void putLong(int index, long v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			if(item == null) { throw new NullPointerException(); }
-			if(m_NamedList.containsKey(key)) { throw new DuplicateKeyException(); }
-			Pair<Class<?>, Object> newItem = field2pair(item);
-			m_NamedList.add(key, newItem);
+			checkMutable();
+			putSlot(index, PacketSchema.LONG, v);
 		}
 		finally {
-			m_wLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
 	/**
-	 * добавить массив именованных элементов
-	 * @param newArrItems массив элементов
-	 * @throws DuplicateKeyException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
-	 * @throws NullPointerException 
+	 * установить long по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @param v новое значение
+	 * @throws KeyNotFoundException
 	 */
-	public final <T> void addAll(Pair<String, T>[] newArrItems) throws DuplicateKeyException, NullPointerException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		for(Pair<String, T> item : newArrItems) { add(item.getFirst(), item.getSecond()); }
+	public final void putLong(String key, long v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
+		
+		try {
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.LONG, v);
+		}
+		finally {
+			m_Lock.unlockWrite(stamp);
+		}
 	}
 	
 	/**
-	 * вставить новый элемент на указанную позицию
-	 * @param newItem новый элемент
-	 * @param index позиция для вставки
-	 * @throws DuplicateKeyException
+	 * получить float по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
 	 * @throws IndexOutOfBoundsException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public final <T> void insert(T newItem, int index) throws DuplicateKeyException, IndexOutOfBoundsException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		insert(Integer.toString(index), newItem, index);
+	public final float getFloat(int index) throws IndexOutOfBoundsException {
+		return Float.intBitsToFloat((int)readSlot(index, PacketSchema.FLOAT));
 	}
 	
 	/**
-	 * вставить новый именованный элемент на указанную позицию
-	 * @param key имя (ключ)
-	 * @param newItem вставляемый элемент
-	 * @param index позиция для вставки
-	 * @throws DuplicateKeyException
-	 * @throws IndexOutOfBoundsException
-	 * @throws DynamicIDTypeArrayException 
-	 * @throws IsMultiLevelArrayException 
+	 * получить float по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
 	 */
-	public final <T> void insert(String key, T newItem, int index) throws DuplicateKeyException, IndexOutOfBoundsException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		m_wLock.lock();
-		
-		try {
-			if(newItem == null) { throw new NullPointerException(); }
-			if(m_NamedList.containsKey(key)) { throw new DuplicateKeyException(); }
-			Pair<Class<?>, Object> new_item = field2pair(newItem);
-			m_NamedList.insert(key, new_item, index);
-		}
-		finally {
-			m_wLock.unlock();
-		}
+	public final float getFloat(String key) throws KeyNotFoundException {
+		return Float.intBitsToFloat((int)readSlot(key, PacketSchema.FLOAT));
 	}
 	
 	/**
-	 * получить элемнт по индексу
-	 * @param index индекс элемнта
-	 * @return требуемый элемент
+	 * установить float по индексу без упаковки
+	 * @param index индекс элемента
+	 * @param v новое значение
 	 * @throws IndexOutOfBoundsException
 	 */
-	@SuppressWarnings("unchecked")
-	public final <T> T get(int index) throws IndexOutOfBoundsException {
-		m_rLock.lock();
+	public final void putFloat(int index, float v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			return (T)m_NamedList.get(index).getSecond();
+			checkMutable();
+			putSlot(index, PacketSchema.FLOAT, Float.floatToRawIntBits(v));
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
 	/**
-	 * получить элемент по имени
+	 * установить float по имени без упаковки
 	 * @param key имя (ключ) элемента
-	 * @return требуемый элемент
+	 * @param v новое значение
 	 * @throws KeyNotFoundException
 	 */
-	@SuppressWarnings("unchecked")
-	public final <T> T get(String key) throws KeyNotFoundException {
-		m_rLock.lock();
+	public final void putFloat(String key, float v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			return (T) m_NamedList.get(key).getSecond();
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.FLOAT, Float.floatToRawIntBits(v));
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
 	/**
-	 * установить значение по индексу
+	 * получить double по индексу без упаковки
+	 * @param index индекс элемента
+	 * @return значение
+	 * @throws IndexOutOfBoundsException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final double getDouble(int index) throws IndexOutOfBoundsException {
+		return Double.longBitsToDouble(readSlot(index, PacketSchema.DOUBLE));
+	}
+	
+	/**
+	 * получить double по имени без упаковки
+	 * @param key имя (ключ) элемента
+	 * @return значение
+	 * @throws KeyNotFoundException
+	 * @throws ClassCastException элемент другого типа
+	 * @throws NullPointerException значение null
+	 */
+	public final double getDouble(String key) throws KeyNotFoundException {
+		return Double.longBitsToDouble(readSlot(key, PacketSchema.DOUBLE));
+	}
+	
+	/**
+	 * установить double по индексу без упаковки
 	 * @param index индекс элемента
 	 * @param v новое значение
 	 * @throws IndexOutOfBoundsException
 	 */
-	public final <T> void put(int index, T v) throws IndexOutOfBoundsException {
-		m_rLock.lock();
+	public final void putDouble(int index, double v) throws IndexOutOfBoundsException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.put(field2pair(v), index);
+			checkMutable();
+			putSlot(index, PacketSchema.DOUBLE, Double.doubleToRawLongBits(v));
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
 	/**
-	 * установить значение по ключу
-	 * @param key ключ
+	 * установить double по имени без упаковки
+	 * @param key имя (ключ) элемента
 	 * @param v новое значение
 	 * @throws KeyNotFoundException
 	 */
-	public final <T> void put(String key, T v) throws KeyNotFoundException {
-		m_rLock.lock();
+	public final void putDouble(String key, double v) throws KeyNotFoundException {
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.put(field2pair(v), key);
+			checkMutable();
+			putSlot(m_Schema.indexOf(key), PacketSchema.DOUBLE, Double.doubleToRawLongBits(v));
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
@@ -287,13 +1352,24 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	 * @return количество элементов в пакете
 	 */
 	public final int size() {
-		m_rLock.lock();
+		if(m_Frozen) { return m_Schema.size(); }
+		
+		//без публикации схемы - размер не удерживает её от изменения на месте;
+		//без блокировки читается только опубликованная схема (см. readValue(String))
+		long stamp = m_Lock.tryOptimisticRead();
+		PacketSchema schema = m_Schema;
+		if(schema.isShared()) {
+			int r = schema.size();
+			if(m_Lock.validate(stamp)) { return r; }
+		}
+		
+		stamp = m_Lock.readLock();
 		
 		try {
-			return m_NamedList.size();
+			return m_Schema.size();
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockRead(stamp);
 		}
 	}
 	
@@ -303,13 +1379,14 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	 * @throws IndexOutOfBoundsException
 	 */
 	public final void remove(int index) throws IndexOutOfBoundsException {
-		m_wLock.lock();
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.remove(index);
+			checkMutable();
+			removeAt(index);
 		}
 		finally {
-			m_wLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
@@ -319,27 +1396,47 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	 * @throws KeyNotFoundException
 	 */
 	public final void remove(String key) throws KeyNotFoundException {
-		m_wLock.lock();
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.remove(key);
+			checkMutable();
+			removeAt(m_Schema.indexOf(key));
 		}
 		finally {
-			m_wLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
+	/**
+	 * удалить элемент по индексу (под блокировкой писателя)
+	 * @param index индекс удаляемого элемента
+	 * @throws IndexOutOfBoundsException
+	 */
+	private final void removeAt(int index) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		m_Schema = m_Schema.remove(index);
+		int n = m_Schema.size();
+		System.arraycopy(m_Values, index + 1, m_Values, index, n - index);
+		m_Values[n] = null;
+		if(m_Slots != null) { System.arraycopy(m_Slots, index + 1, m_Slots, index, n - index); }
+		structureChanged();
+	}
+	
 	/**
 	 * удалить все элементы
 	 */
 	public final void removeAll() {
-		m_wLock.lock();
+		long stamp = m_Lock.writeLock();
 		
 		try {
-			m_NamedList.clear();
+			checkMutable();
+			m_Schema = PacketSchema.EMPTY;
+			m_Values = EMPTY_VALUES;
+			m_Slots = null;
+			structureChanged();
 		}
 		finally {
-			m_wLock.unlock();
+			m_Lock.unlockWrite(stamp);
 		}
 	}
 	
@@ -374,7 +1471,8 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	public <T> T newInstance(int tid) throws NotFoundTypeIDException, InstantiationException {
 		if(supportedClassesIDs()[0] != tid) { throw new NotFoundTypeIDException(); }
 		try {
-			return (T) clone();
+			//новый экземпляр должен быть изменяемым - замороженный шаблон копируется
+			return (T) (m_Frozen ? new Packet(this) : clone());
 		} catch (CloneNotSupportedException e) {
 			throw new InstantiationException(e.toString());
 		}
@@ -386,29 +1484,7 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	@Override
 	public <T, ReadObjectType> T read(ReadObjectType in, Registry reg, Reader<ReadObjectType> reader)
 			throws PacketIOException {
-		try {
-			Packet new_p = (Packet)this.clone();
-			for(int i = 0; i < new_p.size(); ++i) {
-				switch(reader.readByte(in)) {
-					case IS_NOT_NULL_VALUE:
-					try {
-						Serialize s = reg.getSerializerByInstance(new_p.get(i));
-						new_p.put(i, s.read(in, reg, reader));
-					} catch (NotTypeIDException | IsMultiLevelArrayException | DynamicIDTypeArrayException e) {
-						throw new PacketIOException(e);
-					}
-						break;
-					case IS_NULL_VALUE:
-						//ничего не делаем - ничего не записано
-						break;
-					default:
-						throw new PacketIOException(new IllegalArgumentException());
-				}
-			}
-			return (T) new_p;
-		} catch (CloneNotSupportedException e) {
-			throw new PacketIOException(e);
-		}
+		return (T) reg.getCodec(this).read(in, this, reg, reader);
 	}
 	/* (non-Javadoc)
 	 * @see packet.Serialize#write(java.lang.Object, java.lang.Object, packet.Registry, packet.Writer)
@@ -417,18 +1493,26 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	public <T, WriteObjectType> void write(WriteObjectType out, T v, Registry reg, Writer<WriteObjectType> writer)
 			throws PacketIOException {
 		if(v == null) {
-			for(Pair<Class<?>, Object> item : m_NamedList) {
+			if(m_Frozen) {
+				reg.getCodec(this).write(out, this, reg, writer);
+				return;
+			}
+			
+			for(;;) {
+				//кодек берётся до блокировки (его вычисление само читает пакет под блокировкой),
+				//структура сверяется под блокировкой - значения пишутся одним согласованным снимком
+				int modification = m_Modification;
+				PacketCodec codec = reg.getCodec(this);
+				long stamp = m_Lock.readLock();
+				
 				try {
-					if(item.getSecond() != null) {
-						Serialize s = reg.getSerializerByInstance(item.getSecond());
-						writer.writeByte(out, IS_NOT_NULL_VALUE);
-						s.write(out, item.getSecond(), reg, writer);
+					if(m_Modification == modification) {
+						codec.write(out, this, reg, writer);
+						return;
 					}
-					else {
-						writer.writeByte(out, IS_NULL_VALUE);
-					}
-				} catch (NotTypeIDException | IsMultiLevelArrayException | DynamicIDTypeArrayException e) {
-					throw new PacketIOException(e);
+				}
+				finally {
+					m_Lock.unlockRead(stamp);
 				}
 			}
 		}
@@ -441,19 +1525,70 @@ public final class Packet implements Clone, DynamicID, Serialize {
 			}
 		}
 	}
+	/**
+	 * записать пакет в буфер с длиной перед каждым не null полем
+	 * (для чтения по требованию через {@link PacketView})
+	 * @param out буфер для записи
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов в буфер
+	 * @throws PacketIOException
+	 */
+	public final void writeSized(ByteBuffer out, Registry reg, Writer<ByteBuffer> writer) throws PacketIOException {
+		if(m_Frozen) {
+			reg.getCodec(this).writeSized(out, this, reg, writer);
+			return;
+		}
+		
+		for(;;) {
+			int modification = m_Modification;
+			PacketCodec codec = reg.getCodec(this);
+			long stamp = m_Lock.readLock();
+			
+			try {
+				if(m_Modification == modification) {
+					codec.writeSized(out, this, reg, writer);
+					return;
+				}
+			}
+			finally {
+				m_Lock.unlockRead(stamp);
+			}
+		}
+	}
+	/**
+	 * прочитать пакет по этому шаблону в существующий экземпляр без создания нового пакета<br />
+	 * массивы значений into переиспользуются (см. {@link PacketCodec#read(Object, Packet, Packet, Registry, Reader)}),
+	 * экземпляры для повторного использования выдаёт {@link PacketPool}
+	 * @param in объект для чтения
+	 * @param into пакет для чтения (не замороженный), прежнее содержимое заменяется
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return into
+	 * @throws PacketIOException
+	 */
+	public final <ReadObjectType> Packet read(ReadObjectType in, Packet into, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		return reg.getCodec(this).read(in, into, this, reg, reader);
+	}
+	/**
+	 * пакет по этому шаблону, читаемый из буфера по требованию
+	 * @param in буфер, пакет начинается с текущей позиции
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов из буфера
+	 * @return представление пакета
+	 */
+	public final PacketView view(ByteBuffer in, Registry reg, Reader<ByteBuffer> reader) {
+		return new PacketView(in, this, reg, reader);
+	}
 	/* (non-Javadoc)
 	 * @see java.lang.Object#clone()
 	 */
 	@Override
 	public Clone clone() throws CloneNotSupportedException {
-		m_rLock.lock();
-		
-		try {
-			return (Clone)new Packet(this);
-		}
-		finally {
-			m_rLock.unlock();
-		}
+		//замороженный пакет не изменяется - копия не нужна
+		if(m_Frozen) { return this; }
+		//копирующий конструктор читает пакет под блокировкой читателя
+		return (Clone)new Packet(this);
 	}
 	
 	/**
@@ -461,7 +1596,32 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	 * @return массив ключей
 	 */
 	public final String[] getKeysSortedByIndex() {
-		return m_NamedList.getKeysSortedByIndex();
+		return m_Schema.Types.getKeysSortedByIndex();
+	}
+	
+	/**
+	 * начальное значение 64-битного FNV-1a
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	/**
+	 * множитель 64-битного FNV-1a
+	 */
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	private static long hash(long h, char c) {
+		h = (h ^ (c & 0xFF)) * FNV_PRIME;
+		return (h ^ (c >>> 8)) * FNV_PRIME;
+	}
+	
+	private static long hash(long h, String s) {
+		int len = s.length();
+		for(int i = 0; i < len; ++i) { h = hash(h, s.charAt(i)); }
+		return h;
+	}
+	
+	private static long hash(long h, int v) {
+		for(int i = 0; i < 4; ++i, v >>>= 8) { h = (h ^ (v & 0xFF)) * FNV_PRIME; }
+		return h;
 	}
 	
 	/* (non-Javadoc)
@@ -469,37 +1629,65 @@ public final class Packet implements Clone, DynamicID, Serialize {
 	 */
 	@Override
 	public int calculateDynamicID() {
-		StringBuilder _sb = new StringBuilder();
-		_sb.append(getClass().getName());
+		DynamicIDCache cache = m_DynamicIDCache;
+		if(cache != null && cache.isValid(m_Modification)) { return cache.ID; }
+		if(m_Frozen) { return dynamicID(); }
 		
-		m_rLock.lock();
+		long stamp = m_Lock.readLock();
 		
 		try {
-			String[] keys = m_NamedList.getKeysSortedByIndex();
-			for(String key : keys) {
-				Pair<Class<?>, Object> o = m_NamedList.get(key);
-				if(o.getSecond() == null) {
-					_sb.append("$");
-					_sb.append(o.getFirst().getName());
-				}
-				else {
-					_sb.append("$");
-					_sb.append(o.getFirst().getName());
-					_sb.append("#");
-					try {
-						_sb.append(Integer.toString(Registry.calculateInstanceID(o.getSecond())));
-					} catch (IsMultiLevelArrayException|DynamicIDTypeArrayException e) {
-						throw new RuntimeException(e);
-					}
-				}
-			}
-		} catch (KeyNotFoundException e1) {
-			//ничего не делаем - всё должно быть согласованно
+			return dynamicID();
 		}
 		finally {
-			m_rLock.unlock();
+			m_Lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * динамический id из кеша или рассчитанный заново
+	 * (под блокировкой читателя или пакет заморожен)
+	 * @return динамический id
+	 */
+	private final int dynamicID() {
+		int modification = m_Modification;
+		DynamicIDCache cache = m_DynamicIDCache;
+		if(cache != null && cache.isValid(modification)) { return cache.ID; }
+		
+		//номер берётся до чтения id вложенных пакетов: их изменение после этого сбросит кеш
+		int epoch = NESTED_EPOCH.get();
+		boolean hasNested = false;
+		boolean foreign = false;
+		//64-битный FNV-1a по имени класса, типам полей и id значений, без промежуточных строк
+		long h = hash(FNV_OFFSET, getClass().getName());
+		int i = 0;
+		for(Class<?> type : m_Schema.Types) {
+			Object value = m_Values[i];
+			h = hash(hash(h, '$'), type.getName());
+			if(value == PRESENT) {
+				h = hash(hash(h, '#'), Registry.calculateThisClassID(PacketSchema.WRAPPERS[m_Schema.Kinds[i]]));
+			}
+			else if(value instanceof Packet) {
+				Packet nested = (Packet)value;
+				//отметка до чтения id: дальнейшее изменение структуры вложенного пакета увеличит NESTED_EPOCH
+				if(!nested.m_Nested) { nested.m_Nested = true; }
+				hasNested = true;
+				h = hash(hash(h, '#'), nested.calculateDynamicID());
+			}
+			else if(value != null) {
+				if(value instanceof DynamicID) { foreign = true; }
+				h = hash(h, '#');
+				try {
+					h = hash(h, Registry.calculateInstanceID(value));
+				} catch (IsMultiLevelArrayException|DynamicIDTypeArrayException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			++i;
 		}
+		int id = (int)(h ^ (h >>> 32));
 		
-		return _sb.toString().hashCode();
+		//другая реализация DynamicID не сообщает об изменении своей структуры - такой id не кешируется
+		m_DynamicIDCache = foreign ? null : new DynamicIDCache(id, modification, hasNested, epoch);
+		return id;
 	}
 }
@@ -0,0 +1,385 @@
+package packet;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import packet.Registry.NotTypeIDException;
+
+/**
+ * кодек пакета, скомпилированный по шаблону<br />
+ * сериалайзеры полей находятся в реестре один раз при компиляции,
+ * запись и чтение не обращаются к реестру за каждым полем<br />
+ * кодек годится для всех пакетов с тем же динамическим id, что и шаблон
+ * (структура полей и типы значений совпадают)<br />
+ * экземпляры создаются и кешируются реестром: {@link Registry#getCodec(Packet)}
+ * @author Ilya Sokolov
+ */
+public final class PacketCodec {
+	/**
+	 * флаг перед полем объект<br />
+	 * не примитивный объект<br />
+	 * не записан == null
+	 */
+	static final byte IS_NULL_VALUE = 1;
+	/**
+	 * флаг перед полем объект<br />
+	 * не примитивный объект<br />
+	 * записан != null
+	 */
+	static final byte IS_NOT_NULL_VALUE = 2;
+	/**
+	 * флаг перед полем объект<br />
+	 * записан != null, после флага длина значения в байтах ({@link #SIZED_LENGTH_BYTES})<br />
+	 * поле можно пропустить не читая (см. {@link PacketView})
+	 */
+	static final byte IS_SIZED_VALUE = 3;
+	/**
+	 * размер длины поля {@link #IS_SIZED_VALUE}: int в порядке байт буфера<br />
+	 * длина пишется и читается напрямую в буфере, минуя Writer/Reader:
+	 * она дописывается на место заглушки после записи значения, поэтому должна иметь
+	 * фиксированный размер, а сжимающие обёртки (packet.compact) перекодируют writeInt
+	 */
+	static final int SIZED_LENGTH_BYTES = 4;
+	/**
+	 * маркер формата на месте флага первого поля<br />
+	 * после маркера битовая карта не null полей: (n + 7) / 8 байт, поле i - бит i % 8 байта i / 8,
+	 * затем значения только не null полей без флагов<br />
+	 * пакет без полей записывается пустым, как и в формате с флагами;
+	 * поток с флагами перед каждым полем (1/2/3) читается по-прежнему
+	 */
+	static final byte NULL_BITMAP = 4;
+
+	/**
+	 * поле отмечено в битовой карте, значение ещё не прочитано
+	 */
+	private static final Object PENDING = new Object();
+
+	/**
+	 * динамический id шаблона
+	 */
+	private final int m_DynamicID;
+	/**
+	 * схема шаблона (опубликованная) на момент компиляции: по ней создаются прочитанные пакеты
+	 */
+	private final PacketSchema m_Schema;
+	/**
+	 * сериалайзеры полей по индексу<br />
+	 * null - тип поля не найден в реестре (ошибка возникнет только при записи/чтении значения)
+	 */
+	private final Serialize[] m_Serializers;
+	/**
+	 * вид поля по схеме шаблона
+	 */
+	private final byte[] m_Kinds;
+	/**
+	 * поле читается/пишется через слот пакета без упаковки
+	 * (примитивное поле с сериалайзером {@link PrimitiveSerialize} того же типа)
+	 */
+	private final boolean[] m_Slots;
+	/**
+	 * есть хотя бы одно поле со слотом
+	 */
+	private final boolean m_HasSlots;
+
+	/**
+	 * скомпилировать кодек по снимку шаблона<br />
+	 * id, схема и значения взяты под одной блокировкой шаблона (см. {@link Packet#compileCodec})
+	 * @param dynamicID динамический id шаблона
+	 * @param schema опубликованная схема шаблона
+	 * @param values значения шаблона по индексу схемы (PRESENT - примитивное значение в слоте)
+	 * @param reg реестр типов
+	 */
+	PacketCodec(int dynamicID, PacketSchema schema, Object[] values, Registry reg) {
+		m_DynamicID = dynamicID;
+		m_Schema = schema;
+		int size = schema.size();
+		m_Serializers = new Serialize[size];
+		m_Kinds = schema.Kinds;
+		m_Slots = new boolean[size];
+		boolean hasSlots = false;
+		for(int i = 0; i < size; ++i) {
+			Object value = values[i];
+			if(value == Packet.PRESENT) {
+				m_Serializers[i] = reg.findSerializerByClass(PacketSchema.WRAPPERS[m_Kinds[i]]);
+			}
+			else {
+				m_Serializers[i] = value != null ?
+						reg.findSerializerByInstance(value) :
+						reg.findSerializerByClass(schema.Types.get(i));
+			}
+			if(m_Kinds[i] != PacketSchema.REFERENCE && m_Serializers[i] instanceof PrimitiveSerialize &&
+					((PrimitiveSerialize)m_Serializers[i]).primitiveClass() == PacketSchema.PRIMITIVES[m_Kinds[i]]) {
+				m_Slots[i] = true;
+				hasSlots = true;
+			}
+		}
+		m_HasSlots = hasSlots;
+	}
+
+	/**
+	 * @return динамический id шаблона
+	 */
+	public final int getDynamicID() { return m_DynamicID; }
+
+	/**
+	 * @return количество полей
+	 */
+	public final int size() { return m_Serializers.length; }
+
+	/**
+	 * @return схема шаблона, по которой скомпилирован кодек
+	 */
+	final PacketSchema schema() { return m_Schema; }
+
+	/**
+	 * @param index индекс поля
+	 * @return сериалайзер поля
+	 * @throws PacketIOException тип поля не найден в реестре
+	 */
+	final Serialize serializer(int index) throws PacketIOException {
+		Serialize s = m_Serializers[index];
+		if(s == null) { throw new PacketIOException(new NotTypeIDException()); }
+		return s;
+	}
+
+	/**
+	 * записать пакет<br />
+	 * маркер {@link #NULL_BITMAP}, битовая карта не null полей, значения не null полей
+	 * @param out объект для записи
+	 * @param p пакет (динамический id совпадает с шаблоном), заморожен или под блокировкой читателя
+	 * (см. {@link Packet#write(Object, Object, Registry, Writer)})
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	public <WriteObjectType> void write(WriteObjectType out, Packet p, Registry reg, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		int size = m_Serializers.length;
+		if(size == 0) { return; }
+
+		writer.writeByte(out, NULL_BITMAP);
+		for(int base = 0; base < size; base += 8) {
+			int bits = 0;
+			int end = Math.min(base + 8, size);
+			for(int i = base; i < end; ++i) {
+				if(p.valueAt(i) != null) { bits |= 1 << (i - base); }
+			}
+			writer.writeByte(out, (byte)bits);
+		}
+		for(int i = 0; i < size; ++i) {
+			Object value = p.valueAt(i);
+			if(value != null) { writeValue(out, p, i, value, serializer(i), reg, writer); }
+		}
+	}
+
+	/**
+	 * записать значение поля
+	 * @param out объект для записи
+	 * @param p пакет
+	 * @param i индекс поля
+	 * @param value p.valueAt(i), не null
+	 * @param s сериалайзер поля
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private <WriteObjectType> void writeValue(WriteObjectType out, Packet p, int i, Object value, Serialize s,
+			Registry reg, Writer<WriteObjectType> writer) throws PacketIOException {
+		if(value != Packet.PRESENT) {
+			s.write(out, value, reg, writer);
+		}
+		else if(m_Slots[i]) {
+			((PrimitiveSerialize)s).writeSlot(out, p.slotAt(i), writer);
+		}
+		else {
+			s.write(out, PacketSchema.fromSlot(m_Kinds[i], p.slotAt(i)), reg, writer);
+		}
+	}
+
+	/**
+	 * записать пакет в буфер с длиной перед каждым не null полем<br />
+	 * длина дописывается после записи значения, поэтому только для ByteBuffer;
+	 * такой пакет читается как обычным {@link #read}, так и по требованию через {@link PacketView}
+	 * @param out буфер для записи
+	 * @param p пакет (динамический id совпадает с шаблоном), заморожен или под блокировкой читателя
+	 * (см. {@link Packet#write(Object, Object, Registry, Writer)})
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов в буфер
+	 * @throws PacketIOException
+	 */
+	public void writeSized(ByteBuffer out, Packet p, Registry reg, Writer<ByteBuffer> writer)
+			throws PacketIOException {
+		for(int i = 0; i < m_Serializers.length; ++i) {
+			Object value = p.valueAt(i);
+			if(value != null) {
+				Serialize s = serializer(i);
+				writer.writeByte(out, IS_SIZED_VALUE);
+				int lenPos = out.position();
+				try {
+					out.putInt(0);
+				} catch (BufferOverflowException | ReadOnlyBufferException e) {
+					throw new PacketIOException(e);
+				}
+				writeValue(out, p, i, value, s, reg, writer);
+				out.putInt(lenPos, out.position() - lenPos - SIZED_LENGTH_BYTES);
+			}
+			else {
+				writer.writeByte(out, IS_NULL_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * @return true - хотя бы одно поле читается в слот без упаковки
+	 */
+	final boolean hasSlots() { return m_HasSlots; }
+
+	/**
+	 * прочитать пакет<br />
+	 * новый пакет разделяет неизменяемую схему шаблона, значения читаются прямо в новый массив
+	 * (шаблон не клонируется); поле, записанное как null, читается как null
+	 * @param in объект для чтения
+	 * @param template шаблон пакета (динамический id совпадает с кодеком)
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return прочитанный пакет
+	 * @throws PacketIOException
+	 */
+	public <ReadObjectType> Packet read(ReadObjectType in, Packet template, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		Object[] values = new Object[m_Serializers.length];
+		long[] slots = m_HasSlots ? new long[values.length] : null;
+		decode(in, values, slots, reg, reader);
+		//схема кодека, а не текущая схема шаблона: шаблон мог измениться после компиляции
+		return new Packet(m_Schema, values, slots);
+	}
+
+	/**
+	 * прочитать пакет в существующий экземпляр<br />
+	 * массивы значений пакета переиспользуются, если подходят по размеру,
+	 * поэтому чтение пакета из примитивных полей не создаёт объектов<br />
+	 * прежнее содержимое пакета заменяется; при ошибке чтения пакет остаётся частично прочитанным
+	 * @param in объект для чтения
+	 * @param into пакет для чтения (не замороженный)
+	 * @param template шаблон пакета (динамический id совпадает с кодеком)
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return into
+	 * @throws PacketIOException
+	 */
+	public <ReadObjectType> Packet read(ReadObjectType in, Packet into, Packet template, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		into.decode(this, in, reg, reader);
+		return into;
+	}
+
+	/**
+	 * прочитать значения полей
+	 * @param in объект для чтения
+	 * @param values значения по индексу (длина равна количеству полей)
+	 * @param slots примитивные значения или null, если нет полей со слотом
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @throws PacketIOException
+	 */
+	<ReadObjectType> void decode(ReadObjectType in, Object[] values, long[] slots, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		if(values.length == 0) { return; }
+
+		byte flag = reader.readByte(in);
+		if(flag == NULL_BITMAP) {
+			decodeBitmap(in, values, slots, reg, reader);
+		}
+		else {
+			decodeFlags(flag, in, values, slots, reg, reader);
+		}
+	}
+
+	/**
+	 * прочитать значения полей после маркера {@link #NULL_BITMAP}<br />
+	 * битовая карта разворачивается в values (PENDING/null), затем читаются только отмеченные поля
+	 * @param in объект для чтения
+	 * @param values значения по индексу
+	 * @param slots примитивные значения или null
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private <ReadObjectType> void decodeBitmap(ReadObjectType in, Object[] values, long[] slots, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		int size = values.length;
+		for(int base = 0; base < size; base += 8) {
+			int bits = reader.readByte(in) & 0xFF;
+			int end = Math.min(base + 8, size);
+			if(bits >>> (end - base) != 0) { throw new PacketIOException(new IllegalArgumentException()); }
+			for(int i = base; i < end; ++i) { values[i] = null; }
+			for(; bits != 0; bits &= bits - 1) { values[base + Integer.numberOfTrailingZeros(bits)] = PENDING; }
+		}
+		int i = 0;
+		try {
+			for(; i < size; ++i) {
+				if(values[i] == PENDING) { readValue(in, values, slots, i, reg, reader); }
+			}
+		} catch (PacketIOException | RuntimeException e) {
+			//непрочитанные поля не должны остаться отмеченными
+			for(; i < size; ++i) {
+				if(values[i] == PENDING) { values[i] = null; }
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * прочитать значения полей с флагом перед каждым полем
+	 * @param first флаг первого поля (уже прочитан)
+	 * @param in объект для чтения
+	 * @param values значения по индексу
+	 * @param slots примитивные значения или null
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private <ReadObjectType> void decodeFlags(byte first, ReadObjectType in, Object[] values, long[] slots, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		for(int i = 0; i < values.length; ++i) {
+			switch(i == 0 ? first : reader.readByte(in)) {
+				case IS_SIZED_VALUE:
+					//длина не нужна - пропускаем её побайтно (readByte не перекодируется обёртками)
+					for(int b = 0; b < SIZED_LENGTH_BYTES; ++b) { reader.readByte(in); }
+					readValue(in, values, slots, i, reg, reader);
+					break;
+				case IS_NOT_NULL_VALUE:
+					readValue(in, values, slots, i, reg, reader);
+					break;
+				case IS_NULL_VALUE:
+					//ничего не записано
+					values[i] = null;
+					break;
+				default:
+					throw new PacketIOException(new IllegalArgumentException());
+			}
+		}
+	}
+
+	/**
+	 * прочитать значение поля
+	 * @param in объект для чтения
+	 * @param values значения по индексу
+	 * @param slots примитивные значения или null
+	 * @param i индекс поля
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private <ReadObjectType> void readValue(ReadObjectType in, Object[] values, long[] slots, int i, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		if(m_Slots[i]) {
+			slots[i] = ((PrimitiveSerialize)m_Serializers[i]).readSlot(in, reader);
+			values[i] = Packet.PRESENT;
+		}
+		else {
+			values[i] = serializer(i).read(in, reg, reader);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package packet;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import utils.IntMap;
+
+/**
+ * пул пакетов для чтения без создания объектов на каждое сообщение<br />
+ * свободные пакеты хранятся по динамическому id шаблона; выданный пакет уже имеет схему шаблона,
+ * чтение в него ({@link #read}) переиспользует его массивы значений<br />
+ * пакет возвращается в пул явно ({@link #release(Lease)}) или через try-with-resources:
+ * <pre>
+ * try(PacketPool.Lease l = pool.read(in, template, reader)) {
+ * 	handle(l.packet());
+ * }
+ * </pre>
+ * после возврата пакет использовать нельзя; повторный возврат той же аренды игнорируется
+ * и не затрагивает пакет, уже выданный по новой аренде<br />
+ * потокобезопасен
+ * @author Ilya Sokolov
+ */
+public final class PacketPool {
+	/**
+	 * пакет пула<br />
+	 * создаётся один раз вместе с пакетом и хранится в очереди свободных пакетов
+	 */
+	private static final class Entry {
+		private static final AtomicIntegerFieldUpdater<Entry> GENERATION =
+				AtomicIntegerFieldUpdater.newUpdater(Entry.class, "m_Generation");
+		
+		/**
+		 * динамический id шаблона, по которому создан пакет
+		 */
+		private final int m_DynamicID;
+		private final Packet m_Packet;
+		/**
+		 * номер выдачи пакета<br />
+		 * увеличивается атомарно при возврате - вернуть пакет может только аренда текущей выдачи, один раз
+		 */
+		private volatile int m_Generation = 0;
+		
+		private Entry(int dynamicID, Packet p) {
+			m_DynamicID = dynamicID;
+			m_Packet = p;
+		}
+	}
+	
+	/**
+	 * аренда пакета из пула<br />
+	 * создаётся на каждую выдачу пакета и помнит номер выдачи: устаревшая аренда не может вернуть
+	 * пакет, уже выданный снова; в try-with-resources аренда не покидает метод и после
+	 * escape analysis не создаётся в куче
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final PacketPool m_Pool;
+		private final Entry m_Entry;
+		/**
+		 * номер выдачи пакета этой арендой
+		 */
+		private final int m_Generation;
+		
+		private Lease(PacketPool pool, Entry e, int generation) {
+			m_Pool = pool;
+			m_Entry = e;
+			m_Generation = generation;
+		}
+		
+		/**
+		 * @return арендованный пакет
+		 */
+		public final Packet packet() {
+			return m_Entry.m_Packet;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.AutoCloseable#close()
+		 */
+		@Override
+		public void close() {
+			m_Pool.release(this);
+		}
+	}
+	
+	/**
+	 * свободных пакетов одного шаблона по умолчанию
+	 */
+	public static final int DEFAULT_MAX_IDLE = 64;
+	
+	private final Registry m_Registry;
+	/**
+	 * максимум свободных пакетов одного шаблона, лишние возвращённые пакеты отбрасываются
+	 */
+	private final int m_MaxIdle;
+	/**
+	 * свободные пакеты по динамическому id шаблона<br />
+	 * мап copy-on-write, очередь шаблона синхронизируется на самой очереди
+	 */
+	private volatile IntMap<ArrayDeque<Entry>> m_Idle = IntMap.empty();
+	/**
+	 * блокировка писателей m_Idle
+	 */
+	private final Lock m_wLock = new ReentrantLock();
+	
+	/**
+	 * @param reg реестр типов для чтения пакетов
+	 */
+	public PacketPool(Registry reg) {
+		this(reg, DEFAULT_MAX_IDLE);
+	}
+	/**
+	 * @param reg реестр типов для чтения пакетов
+	 * @param maxIdle максимум свободных пакетов одного шаблона
+	 */
+	public PacketPool(Registry reg, int maxIdle) {
+		if(maxIdle < 0) { throw new IllegalArgumentException(); }
+		m_Registry = reg;
+		m_MaxIdle = maxIdle;
+	}
+	
+	/**
+	 * @param dynamicID динамический id шаблона
+	 * @return очередь свободных пакетов шаблона
+	 */
+	private ArrayDeque<Entry> idle(int dynamicID) {
+		ArrayDeque<Entry> q = m_Idle.get(dynamicID);
+		if(q != null) { return q; }
+		
+		m_wLock.lock();
+		
+		try {
+			q = m_Idle.get(dynamicID);
+			if(q == null) {
+				q = new ArrayDeque<>();
+				m_Idle = m_Idle.put(dynamicID, q);
+			}
+			return q;
+		}
+		finally {
+			m_wLock.unlock();
+		}
+	}
+	
+	/**
+	 * получить пакет со схемой шаблона<br />
+	 * свободный пакет из пула или новый, если свободных нет;
+	 * значения пакета не определены до чтения в него
+	 * @param template шаблон пакета
+	 * @return аренда пакета
+	 */
+	public final Lease acquire(Packet template) {
+		Entry e = take(m_Registry.getCodec(template));
+		return new Lease(this, e, e.m_Generation);
+	}
+	/**
+	 * получить пакет со схемой кодека<br />
+	 * id и схема берутся из кодека - одного снимка шаблона;
+	 * аренда создаётся вызывающим методом, чтобы не покидать его (escape analysis)
+	 * @param codec кодек шаблона
+	 * @return пакет пула
+	 */
+	private Entry take(PacketCodec codec) {
+		int id = codec.getDynamicID();
+		ArrayDeque<Entry> q = idle(id);
+		Entry e;
+		synchronized(q) {
+			e = q.pollLast();
+		}
+		if(e == null) {
+			PacketSchema schema = codec.schema();
+			e = new Entry(id, new Packet(schema, new Object[schema.size()], null));
+		}
+		return e;
+	}
+	
+	/**
+	 * получить пакет из пула и прочитать его по шаблону
+	 * @param in объект для чтения
+	 * @param template шаблон пакета
+	 * @param reader читатель базовых типов
+	 * @return аренда прочитанного пакета
+	 * @throws PacketIOException пакет при ошибке возвращается в пул
+	 */
+	public final <ReadObjectType> Lease read(ReadObjectType in, Packet template, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		PacketCodec codec = m_Registry.getCodec(template);
+		Entry e = take(codec);
+		int generation = e.m_Generation;
+		try {
+			codec.read(in, e.m_Packet, template, m_Registry, reader);
+		} catch (PacketIOException | RuntimeException x) {
+			release(e, generation);
+			throw x;
+		}
+		return new Lease(this, e, generation);
+	}
+	
+	/**
+	 * вернуть пакет в пул<br />
+	 * повторный возврат игнорируется; замороженный пакет в пул не возвращается
+	 * @param l аренда пакета
+	 */
+	public final void release(Lease l) {
+		if(l.m_Pool != this) { throw new IllegalArgumentException(); }
+		release(l.m_Entry, l.m_Generation);
+	}
+	/**
+	 * вернуть пакет в пул, если он ещё выдан с этим номером
+	 * @param e пакет пула
+	 * @param generation номер выдачи пакета
+	 */
+	private void release(Entry e, int generation) {
+		if(!Entry.GENERATION.compareAndSet(e, generation, generation + 1)) { return; }
+		if(e.m_Packet.isFrozen()) { return; }
+		
+		ArrayDeque<Entry> q = idle(e.m_DynamicID);
+		synchronized(q) {
+			if(q.size() < m_MaxIdle) { q.addLast(e); }
+		}
+	}
+	
+	/**
+	 * отбросить все свободные пакеты
+	 */
+	public final void clear() {
+		m_wLock.lock();
+		
+		try {
+			m_Idle = IntMap.empty();
+		}
+		finally {
+			m_wLock.unlock();
+		}
+	}
+}
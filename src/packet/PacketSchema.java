@@ -0,0 +1,266 @@
+package packet;
+
+import java.util.Arrays;
+
+import utils.NamedList;
+import utils.NamedList.DuplicateKeyException;
+import utils.NamedList.KeyNotFoundException;
+
+/**
+ * схема пакета: имена и типы элементов по индексу<br />
+ * пока схема принадлежит одному пакету, его изменения структуры меняют её на месте
+ * (под блокировкой писателя пакета); после публикации ({@link #share()}) схема неизменяема
+ * и разделяется между шаблоном, его копиями и прочитанными по нему пакетами,
+ * а изменение структуры пакета начинается с её копии<br />
+ * для примитивных типов (int.class/Integer.class, ...) хранит вид элемента:
+ * такие значения пакет держит в слотах long[] без упаковки
+ * @author Ilya Sokolov
+ */
+final class PacketSchema {
+	/*
+	 * вид элемента
+	 */
+	static final byte REFERENCE = 0;
+	static final byte BOOLEAN = 1;
+	static final byte BYTE = 2;
+	static final byte CHAR = 3;
+	static final byte SHORT = 4;
+	static final byte INT = 5;
+	static final byte LONG = 6;
+	static final byte FLOAT = 7;
+	static final byte DOUBLE = 8;
+
+	/**
+	 * классы-обёртки по виду элемента
+	 */
+	static final Class<?>[] WRAPPERS = new Class<?>[] {
+		null, Boolean.class, Byte.class, Character.class, Short.class,
+		Integer.class, Long.class, Float.class, Double.class };
+	/**
+	 * примитивные классы по виду элемента
+	 */
+	static final Class<?>[] PRIMITIVES = new Class<?>[] {
+		null, boolean.class, byte.class, char.class, short.class,
+		int.class, long.class, float.class, double.class };
+
+	/**
+	 * пустая схема
+	 */
+	static final PacketSchema EMPTY = new PacketSchema(new NamedList<Class<?>>()).share();
+
+	/**
+	 * имена и типы элементов (после публикации не изменяется)
+	 */
+	final NamedList<Class<?>> Types;
+	/**
+	 * вид элемента по индексу<br />
+	 * длина может быть больше size() - запас для добавления элементов
+	 */
+	byte[] Kinds;
+	/**
+	 * схема опубликована - изменять на месте нельзя
+	 */
+	private volatile boolean m_Shared = false;
+
+	/**
+	 * начальный запас видов элементов при добавлении
+	 */
+	private static final int DEFAULT_CAPACITY = 8;
+
+	/**
+	 * @param types имена и типы элементов, список становится собственностью схемы
+	 */
+	PacketSchema(NamedList<Class<?>> types) {
+		Types = types;
+		Kinds = new byte[types.size()];
+		int i = 0;
+		for(Class<?> type : types) { Kinds[i++] = kindOf(type); }
+	}
+
+	/**
+	 * @return количество элементов
+	 */
+	final int size() {
+		return Types.size();
+	}
+
+	/**
+	 * опубликовать схему: после этого она не изменяется<br />
+	 * вызывается всякий раз, когда ссылка на схему выходит за пределы пакета-владельца,
+	 * под блокировкой пакета-владельца или для замороженного пакета
+	 * @return эта схема
+	 */
+	final PacketSchema share() {
+		m_Shared = true;
+		return this;
+	}
+
+	/**
+	 * @return true - схема опубликована и больше не изменяется
+	 * (её можно читать без блокировки пакета-владельца)
+	 */
+	final boolean isShared() {
+		return m_Shared;
+	}
+
+	/**
+	 * @return схема для изменения: эта, если не опубликована, иначе копия
+	 */
+	private PacketSchema mutable() {
+		return m_Shared ? new PacketSchema(copyTypes()) : this;
+	}
+
+	/**
+	 * обеспечить место под ещё один вид элемента
+	 */
+	private void grow() {
+		if(Types.size() < Kinds.length) { return; }
+		Kinds = Arrays.copyOf(Kinds, Math.max(DEFAULT_CAPACITY, Kinds.length * 2));
+	}
+
+	/**
+	 * добавить элемент в конец<br />
+	 * имя будет соответствовать индексу элемента
+	 * @param type тип элемента
+	 * @return схема с добавленным элементом (эта или новая)
+	 */
+	final PacketSchema add(Class<?> type) {
+		PacketSchema r = mutable();
+		r.grow();
+		r.Kinds[r.Types.size()] = kindOf(type);
+		r.Types.add(type);
+		return r;
+	}
+
+	/**
+	 * добавить элемент в конец
+	 * @param key имя элемента
+	 * @param type тип элемента
+	 * @return схема с добавленным элементом (эта или новая)
+	 * @throws DuplicateKeyException схема не изменена
+	 */
+	final PacketSchema add(String key, Class<?> type) throws DuplicateKeyException {
+		if(Types.containsKey(key)) { throw new DuplicateKeyException(); }
+		PacketSchema r = mutable();
+		r.grow();
+		r.Kinds[r.Types.size()] = kindOf(type);
+		r.Types.add(key, type);
+		return r;
+	}
+
+	/**
+	 * вставить элемент
+	 * @param key имя элемента
+	 * @param type тип элемента
+	 * @param index позиция
+	 * @return схема со вставленным элементом (эта или новая)
+	 * @throws DuplicateKeyException схема не изменена
+	 * @throws IndexOutOfBoundsException схема не изменена
+	 */
+	final PacketSchema insert(String key, Class<?> type, int index) throws DuplicateKeyException {
+		int size = Types.size();
+		if(index < 0 || index > size) { throw new IndexOutOfBoundsException(); }
+		if(Types.containsKey(key)) { throw new DuplicateKeyException(); }
+		PacketSchema r = mutable();
+		r.grow();
+		System.arraycopy(r.Kinds, index, r.Kinds, index + 1, size - index);
+		r.Kinds[index] = kindOf(type);
+		r.Types.insert(key, type, index);
+		return r;
+	}
+
+	/**
+	 * заменить тип элемента
+	 * @param type новый тип
+	 * @param index индекс элемента
+	 * @return схема с новым типом элемента (эта или новая)
+	 */
+	final PacketSchema put(Class<?> type, int index) {
+		PacketSchema r = mutable();
+		r.Types.put(type, index);
+		r.Kinds[index] = kindOf(type);
+		return r;
+	}
+
+	/**
+	 * удалить элемент
+	 * @param index индекс элемента
+	 * @return схема без элемента (эта или новая)
+	 */
+	final PacketSchema remove(int index) {
+		PacketSchema r = mutable();
+		r.Types.remove(index);
+		System.arraycopy(r.Kinds, index + 1, r.Kinds, index, r.Types.size() - index);
+		return r;
+	}
+
+	/**
+	 * @param key имя элемента
+	 * @return индекс элемента
+	 * @throws KeyNotFoundException
+	 */
+	final int indexOf(String key) throws KeyNotFoundException {
+		return Types.indexOf(key);
+	}
+
+	/**
+	 * @return изменяемая копия списка типов для построения новой схемы
+	 */
+	private NamedList<Class<?>> copyTypes() {
+		return new NamedList<>(Types);
+	}
+
+	/**
+	 * @param type тип элемента
+	 * @return вид элемента
+	 */
+	static byte kindOf(Class<?> type) {
+		for(byte k = BOOLEAN; k <= DOUBLE; ++k) {
+			if(type == WRAPPERS[k] || type == PRIMITIVES[k]) { return k; }
+		}
+		return REFERENCE;
+	}
+
+	/**
+	 * значение в слот<br />
+	 * целые - значение со знаком, char - код символа, boolean - 0/1,
+	 * float - Float.floatToRawIntBits, double - Double.doubleToRawLongBits
+	 * @param kind вид элемента
+	 * @param v значение (обёртка вида kind)
+	 * @return слот
+	 * @throws ClassCastException значение другого типа
+	 */
+	static long toSlot(byte kind, Object v) {
+		switch(kind) {
+			case BOOLEAN: return (Boolean)v ? 1 : 0;
+			case BYTE: return (Byte)v;
+			case CHAR: return (Character)v;
+			case SHORT: return (Short)v;
+			case INT: return (Integer)v;
+			case LONG: return (Long)v;
+			case FLOAT: return Float.floatToRawIntBits((Float)v);
+			case DOUBLE: return Double.doubleToRawLongBits((Double)v);
+			default: throw new ClassCastException();
+		}
+	}
+
+	/**
+	 * слот в значение (см. {@link #toSlot})
+	 * @param kind вид элемента
+	 * @param slot слот
+	 * @return обёртка вида kind
+	 */
+	static Object fromSlot(byte kind, long slot) {
+		switch(kind) {
+			case BOOLEAN: return slot != 0;
+			case BYTE: return (byte)slot;
+			case CHAR: return (char)slot;
+			case SHORT: return (short)slot;
+			case INT: return (int)slot;
+			case LONG: return slot;
+			case FLOAT: return Float.intBitsToFloat((int)slot);
+			case DOUBLE: return Double.longBitsToDouble(slot);
+			default: throw new ClassCastException();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package packet;
+
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import packet.nio.BufferReader;
+import utils.NamedList.KeyNotFoundException;
+
+/**
+ * пакет, читаемый по требованию из записанных байт<br />
+ * при первом обращении строится таблица смещений полей, значение поля читается
+ * только при запросе через {@link #get(int)}/{@link #get(String)} и запоминается<br />
+ * поля, записанные с длиной ({@link PacketCodec#writeSized}), пропускаются без чтения;
+ * поля без длины (обычная запись, с флагами или с битовой картой) читаются сразу при построении таблицы<br />
+ * не потокобезопасен
+ * @author Ilya Sokolov
+ */
+public final class PacketView {
+	/**
+	 * значение поля ещё не прочитано
+	 */
+	private static final Object NOT_READ = new Object();
+
+	/**
+	 * байты пакета, позиция 0 - начало пакета
+	 */
+	private final ByteBuffer m_Buffer;
+	/**
+	 * схема шаблона
+	 */
+	private final PacketSchema m_Schema;
+	/**
+	 * кодек шаблона
+	 */
+	private final PacketCodec m_Codec;
+	private final Registry m_Registry;
+	private final Reader<ByteBuffer> m_Reader;
+	/**
+	 * смещения значений полей, null - таблица ещё не построена
+	 */
+	private int[] m_Offsets = null;
+	/**
+	 * прочитанные значения полей или NOT_READ
+	 */
+	private Object[] m_Values = null;
+	/**
+	 * длина пакета в байтах
+	 */
+	private int m_Length = -1;
+
+	/**
+	 * @param in буфер, пакет начинается с текущей позиции (позиция буфера не меняется)
+	 * @param template шаблон пакета
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов из буфера
+	 */
+	public PacketView(ByteBuffer in, Packet template, Registry reg, Reader<ByteBuffer> reader) {
+		//slice() сбрасывает порядок байт в BIG_ENDIAN - сохраняем порядок буфера вызывающего
+		m_Buffer = in.slice().order(in.order());
+		m_Codec = reg.getCodec(template);
+		//схема кодека: она соответствует его сериалайзерам, даже если шаблон изменился после компиляции
+		m_Schema = m_Codec.schema();
+		m_Registry = reg;
+		m_Reader = reader;
+	}
+	/**
+	 * @param in буфер, пакет начинается с текущей позиции (позиция буфера не меняется)
+	 * @param template шаблон пакета
+	 * @param reg реестр типов
+	 */
+	public PacketView(ByteBuffer in, Packet template, Registry reg) {
+		this(in, template, reg, new BufferReader());
+	}
+
+	/**
+	 * построить таблицу смещений полей
+	 * @throws PacketIOException
+	 */
+	private void scan() throws PacketIOException {
+		if(m_Offsets != null) { return; }
+
+		int size = m_Codec.size();
+		int[] offsets = new int[size];
+		Object[] values = new Object[size];
+		ByteBuffer in = m_Buffer.duplicate().order(m_Buffer.order());
+		try {
+			byte flag = size > 0 ? in.get() : 0;
+			if(flag == PacketCodec.NULL_BITMAP) {
+				//битовая карта, значения без длины - читаются сразу
+				int bitmap = in.position();
+				if(in.remaining() < (size + 7) / 8) { throw new BufferUnderflowException(); }
+				in.position(bitmap + (size + 7) / 8);
+				for(int i = 0; i < size; ++i) {
+					if((in.get(bitmap + i / 8) & (1 << (i % 8))) == 0) {
+						offsets[i] = -1;
+						values[i] = null;
+					}
+					else {
+						offsets[i] = in.position();
+						values[i] = m_Codec.serializer(i).read(in, m_Registry, m_Reader);
+					}
+				}
+			}
+			else {
+				for(int i = 0; i < size; ++i) {
+					switch(i == 0 ? flag : in.get()) {
+						case PacketCodec.IS_NULL_VALUE:
+							offsets[i] = -1;
+							values[i] = null;
+							break;
+						case PacketCodec.IS_SIZED_VALUE: {
+							//длина записана напрямую в буфер (см. PacketCodec.SIZED_LENGTH_BYTES)
+							int len = in.getInt();
+							if(len < 0 || len > in.remaining()) { throw new BufferUnderflowException(); }
+							offsets[i] = in.position();
+							values[i] = NOT_READ;
+							in.position(in.position() + len);
+							break;
+						}
+						case PacketCodec.IS_NOT_NULL_VALUE:
+							//длины нет - пропустить можно только прочитав
+							offsets[i] = in.position();
+							values[i] = m_Codec.serializer(i).read(in, m_Registry, m_Reader);
+							break;
+						default:
+							throw new PacketIOException(new StreamCorruptedException("invalid field flag"));
+					}
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+		m_Length = in.position();
+		m_Values = values;
+		m_Offsets = offsets;
+	}
+
+	/**
+	 * @return количество полей
+	 */
+	public final int size() {
+		return m_Codec.size();
+	}
+
+	/**
+	 * @return длина пакета в байтах (для перехода к следующему пакету в буфере)
+	 * @throws PacketIOException
+	 */
+	public final int encodedLength() throws PacketIOException {
+		scan();
+		return m_Length;
+	}
+
+	/**
+	 * получить элемент по индексу, прочитав только его
+	 * @param index индекс элемента
+	 * @return значение элемента
+	 * @throws PacketIOException
+	 * @throws IndexOutOfBoundsException
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> T get(int index) throws PacketIOException, IndexOutOfBoundsException {
+		scan();
+		Object v = m_Values[index];
+		if(v == NOT_READ) {
+			ByteBuffer in = m_Buffer.duplicate().order(m_Buffer.order());
+			in.position(m_Offsets[index]);
+			v = m_Codec.serializer(index).read(in, m_Registry, m_Reader);
+			m_Values[index] = v;
+		}
+		return (T)v;
+	}
+
+	/**
+	 * получить элемент по имени, прочитав только его
+	 * @param key имя (ключ) элемента
+	 * @return значение элемента
+	 * @throws PacketIOException
+	 * @throws KeyNotFoundException
+	 */
+	public final <T> T get(String key) throws PacketIOException, KeyNotFoundException {
+		return get(m_Schema.indexOf(key));
+	}
+
+	/**
+	 * получить элемент по описателю, прочитав только его
+	 * @param h описатель элемента ({@link Packet#fieldHandle(String)})
+	 * @return значение элемента
+	 * @throws PacketIOException
+	 * @throws KeyNotFoundException
+	 */
+	public final <T> T get(FieldHandle h) throws PacketIOException, KeyNotFoundException {
+		return get(h.indexIn(m_Schema));
+	}
+
+	/**
+	 * прочитать все поля
+	 * @return пакет по схеме шаблона
+	 * @throws PacketIOException
+	 */
+	public final Packet toPacket() throws PacketIOException {
+		int size = size();
+		Object[] values = new Object[size];
+		for(int i = 0; i < size; ++i) { values[i] = get(i); }
+		return new Packet(m_Schema, values, null);
+	}
+}
@@ -0,0 +1,60 @@
+package packet;
+
+/**
+ * сериалайзер примитивного типа<br />
+ * умеет записывать/читать массив примитивов одним блоком, без упаковки элементов<br />
+ * формат блока совпадает с поэлементной записью через {@link Serialize#write}
+ * @author Ilya Sokolov
+ */
+public interface PrimitiveSerialize extends Serialize {
+	/**
+	 * @return примитивный класс (int.class, double.class, ...)
+	 */
+	Class<?> primitiveClass();
+	/**
+	 * прочитать массив примитивов
+	 * @param in объект для чтения
+	 * @param len длина массива
+	 * @param reader читатель базовых типов
+	 * @return прочитанный массив (int[], double[], ...)
+	 * @throws PacketIOException
+	 */
+	<T, ReadObjectType> T readArray(
+			ReadObjectType in,
+			int len,
+			Reader<ReadObjectType> reader) throws PacketIOException;
+	/**
+	 * записать массив примитивов (без длины)
+	 * @param out объект для записи
+	 * @param v записываемый массив (int[], double[], ...)
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	<T, WriteObjectType> void writeArray(
+			WriteObjectType out,
+			T v,
+			Writer<WriteObjectType> writer) throws PacketIOException;
+	/**
+	 * прочитать значение в слот пакета (без упаковки)<br />
+	 * целые - значение со знаком, char - код символа, boolean - 0/1,
+	 * float - Float.floatToRawIntBits, double - Double.doubleToRawLongBits
+	 * @param in объект для чтения
+	 * @param reader читатель базовых типов
+	 * @return слот
+	 * @throws PacketIOException
+	 */
+	<ReadObjectType> long readSlot(
+			ReadObjectType in,
+			Reader<ReadObjectType> reader) throws PacketIOException;
+	/**
+	 * записать значение из слота пакета (без упаковки), формат совпадает с {@link Serialize#write}
+	 * @param out объект для записи
+	 * @param slot слот (см. {@link #readSlot})
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	<WriteObjectType> void writeSlot(
+			WriteObjectType out,
+			long slot,
+			Writer<WriteObjectType> writer) throws PacketIOException;
+}
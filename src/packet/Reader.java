@@ -1,5 +1,9 @@
 package packet;
 
+import java.io.StreamCorruptedException;
+
+import packet.Registry.NotTypeIDException;
+
 /**
  * интерфейс читателя базовых типов из объекта ввода/вывода
  * @author Ilya Sokolov
@@ -80,4 +84,158 @@ public interface Reader<ReadObjectType> {
 	 * @throws PacketIOException
 	 */
 	<ObjectType> ObjectType readObject(ReadObjectType in) throws PacketIOException;
+	
+	/**
+	 * чтение беззнакового числа в формате LEB128 (varint)
+	 * @param in
+	 * @return long
+	 * @throws PacketIOException
+	 */
+	default long readVarLong(ReadObjectType in) throws PacketIOException {
+		long v = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte(in);
+			v |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) { return v; }
+		}
+		throw new PacketIOException(new StreamCorruptedException("malformed varint"));
+	}
+	
+	/**
+	 * чтение id типа, записанного {@link Writer#writeTypeID}
+	 * @param in
+	 * @return id типа из реестра
+	 * @throws PacketIOException
+	 */
+	default int readTypeID(ReadObjectType in) throws PacketIOException {
+		return readInt(in);
+	}
+	
+	/**
+	 * чтение id типа, записанного {@link Writer#writeTypeID}, и поиск сериалайзера типа<br />
+	 * читатели с таблицей типов потока находят сериалайзер по индексу тега
+	 * @param in
+	 * @param reg реестр типов
+	 * @return сериалайзер типа
+	 * @throws PacketIOException типа нет в реестре
+	 */
+	default Serialize readSerializer(ReadObjectType in, Registry reg) throws PacketIOException {
+		try {
+			return reg.getSerializer(readTypeID(in));
+		} catch (NotTypeIDException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	/**
+	 * чтение класса, записанного {@link Writer#writeClassName}
+	 * @param in
+	 * @return класс
+	 * @throws PacketIOException класс не найден
+	 */
+	default Class<?> readClass(ReadObjectType in) throws PacketIOException {
+		try {
+			//без инициализации: статические инициализаторы класса из потока не выполняются
+			return Class.forName(readString(in), false, Reader.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	/**
+	 * чтение строки в стандартном UTF-8, записанной {@link Writer#writeUTF8}
+	 * @param in
+	 * @return String
+	 * @throws PacketIOException
+	 */
+	default String readUTF8(ReadObjectType in) throws PacketIOException {
+		long len = readVarLong(in);
+		if(len < 0 || len > Integer.MAX_VALUE) { throw new PacketIOException(new StreamCorruptedException("string too long: " + len)); }
+		byte[] b = new byte[(int)len];
+		readBytes(in, b);
+		return UTF8.decode(b, 0, b.length);
+	}
+	
+	/*
+	 * блочное чтение массивов примитивов<br />
+	 * формат совпадает с поэлементным чтением, реализации могут переопределить
+	 * методы для чтения массива одним блоком
+	 */
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readBooleans(ReadObjectType in, boolean[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readBoolean(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readChars(ReadObjectType in, char[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readChar(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readShorts(ReadObjectType in, short[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readShort(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readInts(ReadObjectType in, int[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readInt(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readLongs(ReadObjectType in, long[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readLong(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readFloats(ReadObjectType in, float[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readFloat(in); }
+	}
+	
+	/**
+	 * @param in
+	 * @param b массив в который будут записанны прочитанные данные
+	 * @param off смещение от начала массива
+	 * @param len количество читаемых элементов
+	 * @throws PacketIOException
+	 */
+	default void readDoubles(ReadObjectType in, double[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readDouble(in); }
+	}
 }
@@ -1,9 +1,11 @@
 package packet;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import packet.serialize.ArraySerialize;
 import packet.serialize.BooleanSerialize;
@@ -17,6 +19,7 @@ import packet.serialize.ObjectSerialize;
 import packet.serialize.ShortSerialize;
 import packet.serialize.StringSerialize;
 import utils.DeepCopy.Clone;
+import utils.IntMap;
 
 /**
  * реестр типов
@@ -31,43 +34,99 @@ public final class Registry {
 		public DuplicateTypeIDException() { super(); }
 	}
 	/**
-	 * тип не найден в реестре 
+	 * тип не найден в реестре<br />
+	 * без стека вызовов: промах поиска - обычная ситуация (см. {@link Registry#findSerializer(int)})
 	 */
 	@SuppressWarnings("serial")
 	public static final class NotTypeIDException extends PacketException {
-		public NotTypeIDException() { super(); }
+		public NotTypeIDException() { super(null, null, false, false); }
 	}
 	/**
-	 * многомерные массивы не поддерживаются
+	 * многомерные массивы не поддерживаются<br />
+	 * не возникает: многомерные массивы сериализует ArraySerialize
+	 * (оставлено для совместимости сигнатур)<br />
+	 * без стека вызовов
 	 */
 	@SuppressWarnings("serial")
 	public static final class IsMultiLevelArrayException extends PacketException {
-		public IsMultiLevelArrayException() { super(); }
+		public IsMultiLevelArrayException() { super(null, null, false, false); }
 	}
 	/**
-	 * массив из динамических типов - расчитать id невозможно
+	 * массив из динамических типов - расчитать id невозможно<br />
+	 * без стека вызовов
 	 */
 	@SuppressWarnings("serial")
 	public static final class DynamicIDTypeArrayException extends PacketException {
-		public DynamicIDTypeArrayException() { super(); }
+		public DynamicIDTypeArrayException() { super(null, null, false, false); }
 	}
 	
 	/**
-	 * мап с типами
+	 * мап с типами<br />
+	 * неизменяемый, при изменении реестра заменяется новым (copy-on-write),
+	 * чтение - одно volatile чтение без блокировок
 	 */
-	private final HashMap<Integer, Serialize> m_TypeMap = new HashMap<>();
+	private volatile IntMap<Serialize> m_TypeMap = IntMap.empty();
 	/**
-	 * read/write блокировка
+	 * результат разбора класса для поиска сериалайзера
 	 */
-	private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
+	private static final class ClassEntry {
+		/**
+		 * сериалайзер, null - тип не найден в реестре
+		 */
+		final Serialize Serializer;
+		/**
+		 * класс с динамической структурой - id по классу не рассчитывается
+		 */
+		final boolean Dynamic;
+		
+		ClassEntry(Serialize s, boolean dynamic) {
+			Serializer = s;
+			Dynamic = dynamic;
+		}
+	}
+	/**
+	 * кеш класс - сериалайзер<br />
+	 * заменяется новым при любом изменении реестра
+	 */
+	private volatile ClassValue<ClassEntry> m_ClassCache = newClassCache();
+	/**
+	 * блокировка для писателей<br />
+	 * читатели работают с опубликованным m_TypeMap без блокировок
+	 */
+	private final Lock m_wLock = new ReentrantLock();
+	/**
+	 * кеш скомпилированных кодеков пакетов<br />
+	 * ключ - динамический id шаблона<br />
+	 * сбрасывается при любом изменении реестра
+	 */
+	private volatile IntMap<PacketCodec> m_Codecs = IntMap.empty();
+	/**
+	 * номер изменения реестра (добавление/удаление типов)<br />
+	 * кодек, скомпилированный во время изменения реестра, не кешируется
+	 */
+	private volatile int m_Version = 0;
 	/**
-	 * блокировка для читателей
+	 * id типов в порядке первого добавления в реестр, индекс - плотный тег типа<br />
+	 * базовые типы конструктора получают первые (однобайтовые в varint) теги<br />
+	 * тег не меняется при удалении типов: тег удалённого типа не выдаётся другим типам
+	 * и возвращается тому же типу при повторном добавлении<br />
+	 * неизменяемый, при изменении реестра заменяется новым
 	 */
-	private final Lock m_rLock = m_rwLock.readLock();
+	private volatile int[] m_Tags = new int[0];
 	/**
-	 * блокировка для писателей
+	 * сериалайзеры по тегу типа (null - тип удалён)<br />
+	 * неизменяемый, при изменении реестра заменяется новым
 	 */
-	private final Lock m_wLock = m_rwLock.writeLock();
+	private volatile Serialize[] m_TagSerializers = new Serialize[0];
+	/**
+	 * тег по id типа
+	 */
+	private volatile IntMap<Integer> m_TagIndex = IntMap.empty();
+	/**
+	 * классы, которые {@link ObjectSerialize} пишет и читает по полям (см. {@link #allowFields})<br />
+	 * неизменяемый, при изменении заменяется новым
+	 */
+	private volatile Set<Class<?>> m_FieldClasses = Collections.emptySet();
 	
 	/**
 	 * @param c класс элемента
@@ -78,13 +137,10 @@ public final class Registry {
 	}
 	
 	/**
-	 * @param c класс элемента
-	 * @return сериалайзера для массивов
-	 * @throws IsMultiLevelArrayException
-	 * @throws DynamicIDTypeArrayException
+	 * @param c класс массива (в том числе многомерного)
+	 * @return id сериалайзера для массивов
 	 */
-	private static <T> int calculateArrayComponentID(Class<?> c) throws IsMultiLevelArrayException {
-		if(c.getComponentType().isArray()) { throw new IsMultiLevelArrayException(); }
+	private static <T> int calculateArrayComponentID(Class<?> c) {
 		return calculateThisClassID(ArraySerialize.class);
 	}
 	/**
@@ -111,6 +167,23 @@ public final class Registry {
 		return calculateClassID(p.getClass());
 	}
 	
+	/**
+	 * @return новый кеш класс - сериалайзер для текущего m_TypeMap
+	 */
+	private ClassValue<ClassEntry> newClassCache() {
+		return new ClassValue<ClassEntry>() {
+			@Override
+			protected ClassEntry computeValue(Class<?> c) {
+				IntMap<Serialize> map = m_TypeMap;
+				if(DynamicID.class.isAssignableFrom(c)) { return new ClassEntry(null, true); }
+				if(c.isArray()) {
+					return new ClassEntry(map.get(calculateThisClassID(ArraySerialize.class)), false);
+				}
+				return new ClassEntry(map.get(calculateThisClassID(c)), false);
+			}
+		};
+	}
+	
 	/**
 	 * конструктор, добавляет базовые типы
 	 */
@@ -144,12 +217,35 @@ public final class Registry {
 		m_wLock.lock();
 		
 		try {
+			IntMap<Serialize> map = m_TypeMap;
 			Serialize _s = null;
-			for(int tid : s.supportedClassesIDs()) {
-				if(m_TypeMap.containsKey(tid)) { throw new DuplicateTypeIDException(); }
+			int[] tids = s.supportedClassesIDs();
+			for(int tid : tids) {
+				if(map.containsKey(tid)) { throw new DuplicateTypeIDException(); }
 				if(_s == null) { _s = s instanceof Clone ? (Serialize)((Clone)s).clone() : s; }
-				m_TypeMap.put(tid, _s);
+				map = map.put(tid, _s);
+			}
+			//новый тип получает следующий тег, повторно добавленный - свой прежний
+			int count = m_Tags.length;
+			int[] tags = Arrays.copyOf(m_Tags, count + tids.length);
+			Serialize[] tagSerializers = Arrays.copyOf(m_TagSerializers, tags.length);
+			IntMap<Integer> tagIndex = m_TagIndex;
+			for(int tid : tids) {
+				Integer tag = tagIndex.get(tid);
+				if(tag == null) {
+					tag = count;
+					tags[count++] = tid;
+					tagIndex = tagIndex.put(tid, tag);
+				}
+				tagSerializers[tag] = _s;
 			}
+			m_TypeMap = map;
+			m_Tags = Arrays.copyOf(tags, count);
+			m_TagSerializers = Arrays.copyOf(tagSerializers, count);
+			m_TagIndex = tagIndex;
+			m_ClassCache = newClassCache();
+			m_Codecs = IntMap.empty();
+			++m_Version;
 		}
 		finally {
 			m_wLock.unlock();
@@ -164,15 +260,18 @@ public final class Registry {
 	 * @throws CloneNotSupportedException
 	 */
 	public final Serialize getSerializer(int tid) throws NotTypeIDException {
-		m_rLock.lock();
-		
-		try {
-			if(!m_TypeMap.containsKey(tid)) { throw new NotTypeIDException(); }
-			return m_TypeMap.get(tid);
-		}
-		finally {
-			m_rLock.unlock();
-		}
+		Serialize s = m_TypeMap.get(tid);
+		if(s == null) { throw new NotTypeIDException(); }
+		return s;
+	}
+	
+	/**
+	 * найти сериалайзер по id типа без исключений
+	 * @param tid id типа
+	 * @return cериалайзер или null - типа нет в реестре
+	 */
+	public final Serialize findSerializer(int tid) {
+		return m_TypeMap.get(tid);
 	}
 	
 	/**
@@ -186,7 +285,21 @@ public final class Registry {
 	 */
 	public final <T> Serialize getSerializerByInstance(T instance) 
 			throws NotTypeIDException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		return getSerializer(calculateInstanceID(instance));
+		if(instance instanceof DynamicID) { return getSerializer(((DynamicID)instance).calculateDynamicID()); }
+		ClassEntry e = m_ClassCache.get(instance.getClass());
+		if(e.Serializer == null) { throw new NotTypeIDException(); }
+		return e.Serializer;
+	}
+	
+	/**
+	 * найти сериалайзер по экземпляру типа без исключений
+	 * @param instance экземпляр типа
+	 * @return сериалайзер или null - там, где {@link #getSerializerByInstance} бросает исключение
+	 */
+	public final <T> Serialize findSerializerByInstance(T instance) {
+		if(instance instanceof DynamicID) { return m_TypeMap.get(((DynamicID)instance).calculateDynamicID()); }
+		ClassEntry e = m_ClassCache.get(instance.getClass());
+		return e.Serializer;
 	}
 	
 	/**
@@ -200,28 +313,128 @@ public final class Registry {
 	 */
 	public final Serialize getSerializerByClass(Class<?> c) 
 			throws NotTypeIDException, IsMultiLevelArrayException, DynamicIDTypeArrayException {
-		if(c.isArray()) { 
-			return getSerializer(calculateClassID(ArraySerialize.class));
-		}
-		
-		return getSerializer(calculateClassID(c));
+		ClassEntry e = m_ClassCache.get(c);
+		if(e.Dynamic) { throw new DynamicIDTypeArrayException(); }
+		if(e.Serializer == null) { throw new NotTypeIDException(); }
+		return e.Serializer;
 	}
 	
 	/**
-	 * @param tid id типа
-	 * @return true - тип есть в реестре
+	 * найти сериалайзер по классу типа без исключений
+	 * @param c класс типа
+	 * @return сериалайзер или null - там, где {@link #getSerializerByClass} бросает исключение
 	 */
-	public final boolean containsTypeID(int tid) {
-		m_rLock.lock();
+	public final Serialize findSerializerByClass(Class<?> c) {
+		ClassEntry e = m_ClassCache.get(c);
+		return e.Dynamic ? null : e.Serializer;
+	}
+	
+	/**
+	 * разрешить запись класса по полям (без java serialization)<br />
+	 * поток с таким объектом содержит имя класса, а читатель создаёт его экземпляр
+	 * конструктором без параметров и заполняет поля, минуя jdk.serialFilter,
+	 * поэтому класс разрешается явно на обеих сторонах; объекты неразрешённых классов
+	 * пишутся java serialization
+	 * @param c класс (Serializable, с конструктором без параметров, без своих writeObject/readObject)
+	 */
+	public final void allowFields(Class<?> c) {
+		if(c == null) { throw new NullPointerException(); }
+		m_wLock.lock();
 		
 		try {
-			return m_TypeMap.containsKey(tid);
+			Set<Class<?>> classes = new HashSet<>(m_FieldClasses);
+			classes.add(c);
+			m_FieldClasses = Collections.unmodifiableSet(classes);
 		}
 		finally {
-			m_rLock.unlock();
+			m_wLock.unlock();
+		}
+	}
+	
+	/**
+	 * @param c класс
+	 * @return true - запись класса по полям разрешена ({@link #allowFields})
+	 */
+	public final boolean isFieldsAllowed(Class<?> c) {
+		return m_FieldClasses.contains(c);
+	}
+	
+	/**
+	 * получить кодек пакета<br />
+	 * кодек компилируется по пакету при первом обращении и кешируется по динамическому id
+	 * @param p пакет или шаблон пакета
+	 * @return кодек
+	 */
+	public final PacketCodec getCodec(Packet p) {
+		PacketCodec codec = m_Codecs.get(p.calculateDynamicID());
+		if(codec != null) { return codec; }
+		
+		for(;;) {
+			//компилируем без блокировки реестра: компиляция берёт блокировку читателя пакета,
+			//а поток, пишущий этот пакет, может ждать блокировку реестра за кодеком вложенного пакета
+			int version = m_Version;
+			codec = p.compileCodec(this);
+			
+			m_wLock.lock();
+			
+			try {
+				PacketCodec cached = m_Codecs.get(codec.getDynamicID());
+				if(cached != null) { return cached; }
+				//реестр изменился во время компиляции - сериалайзеры кодека могли устареть
+				if(m_Version == version) {
+					m_Codecs = m_Codecs.put(codec.getDynamicID(), codec);
+					return codec;
+				}
+			}
+			finally {
+				m_wLock.unlock();
+			}
 		}
 	}
 	
+	/**
+	 * плотные теги типов для таблицы типов потока (см. {@link packet.compact.TypeTagWriter})<br />
+	 * включает теги удалённых типов - теги не меняются при удалении
+	 * @return id типов, индекс - тег типа (порядок первого добавления в реестр)
+	 */
+	public final int[] getTypeTags() {
+		return m_Tags.clone();
+	}
+	
+	/**
+	 * @return количество выданных тегов типов
+	 */
+	public final int getTypeTagCount() {
+		return m_Tags.length;
+	}
+	
+	/**
+	 * @param tid id типа
+	 * @return тег типа или -1 - тип никогда не добавлялся в реестр
+	 */
+	public final int getTypeTag(int tid) {
+		Integer tag = m_TagIndex.get(tid);
+		return tag == null ? -1 : tag;
+	}
+	
+	/**
+	 * найти сериалайзер по тегу типа без исключений (индекс массива, без поиска по id)
+	 * @param tag тег типа
+	 * @return cериалайзер или null - тег не выдан или тип удалён
+	 */
+	public final Serialize findSerializerByTag(int tag) {
+		Serialize[] s = m_TagSerializers;
+		return tag >= 0 && tag < s.length ? s[tag] : null;
+	}
+	
+	/**
+	 * @param tid id типа
+	 * @return true - тип есть в реестре
+	 */
+	public final boolean containsTypeID(int tid) {
+		return m_TypeMap.containsKey(tid);
+	}
+	
 	/**
 	 * @param c класс типа
 	 * @return true - тип есть в реестре
@@ -251,13 +464,23 @@ public final class Registry {
 	 * @param tid id типа
 	 */
 	public final void removeType(int tid) {
-		m_rLock.lock();
+		m_wLock.lock();
 		
 		try {
-			m_TypeMap.remove(tid);
+			m_TypeMap = m_TypeMap.remove(tid);
+			//тег остаётся за типом, освобождается только сериалайзер
+			Integer tag = m_TagIndex.get(tid);
+			if(tag != null) {
+				Serialize[] tagSerializers = m_TagSerializers.clone();
+				tagSerializers[tag] = null;
+				m_TagSerializers = tagSerializers;
+			}
+			m_ClassCache = newClassCache();
+			m_Codecs = IntMap.empty();
+			++m_Version;
 		}
 		finally {
-			m_rLock.unlock();
+			m_wLock.unlock();
 		}
 	}
 	
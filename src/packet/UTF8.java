@@ -0,0 +1,84 @@
+package packet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * кодирование строк в стандартный UTF-8<br />
+ * кодирование в готовый массив ({@link #encode(String, byte[], int)}) совпадает с {@link String#getBytes}:
+ * суррогатная пара - 4 байта, одиночный суррогат заменяется на '?'<br />
+ * без состояния, безопасно для использования из нескольких потоков
+ * @author Ilya Sokolov
+ */
+public final class UTF8 {
+	/**
+	 * максимум байт на символ строки (суррогатная пара - 4 байта на 2 символа)
+	 */
+	public static final int MAX_BYTES_PER_CHAR = 3;
+	
+	private UTF8() { }
+	
+	/**
+	 * закодировать строку
+	 * @param s строка
+	 * @param dst массив, в который записываются байты (не больше {@link #MAX_BYTES_PER_CHAR} на символ)
+	 * @param off смещение от начала массива
+	 * @return смещение после последнего записанного байта
+	 */
+	public static int encode(String s, byte[] dst, int off) {
+		int strlen = s.length();
+		int i = 0;
+		//ASCII префикс - отдельный короткий цикл
+		for(; i < strlen; ++i) {
+			char c = s.charAt(i);
+			if(c >= 0x80) { break; }
+			dst[off + i] = (byte)c;
+		}
+		off += i;
+		for(; i < strlen; ++i) {
+			char c = s.charAt(i);
+			if(c < 0x80) {
+				dst[off++] = (byte)c;
+			}
+			else if(c < 0x800) {
+				dst[off++] = (byte)(0xC0 | (c >> 6));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < strlen && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				dst[off++] = (byte)(0xF0 | (cp >> 18));
+				dst[off++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				dst[off++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				dst[off++] = (byte)(0x80 | (cp & 0x3F));
+			}
+			else if(Character.isSurrogate(c)) {
+				dst[off++] = '?';
+			}
+			else {
+				dst[off++] = (byte)(0xE0 | (c >> 12));
+				dst[off++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return off;
+	}
+	
+	/**
+	 * закодировать строку
+	 * @param s строка
+	 * @return байты строки в UTF-8
+	 */
+	public static byte[] encode(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * раскодировать строку
+	 * @param b массив байт
+	 * @param off смещение от начала массива
+	 * @param len количество байт
+	 * @return строка
+	 */
+	public static String decode(byte[] b, int off, int len) {
+		return new String(b, off, len, StandardCharsets.UTF_8);
+	}
+}
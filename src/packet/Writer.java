@@ -80,4 +80,138 @@ public interface Writer<WriteObjectType> {
 	 * @throws PacketIOException
 	 */
 	void writeObject(WriteObjectType out, Object v) throws PacketIOException;
+	
+	/**
+	 * запись беззнакового числа в формате LEB128 (varint)<br />
+	 * по 7 бит на байт, старший бит - признак продолжения
+	 * @param out
+	 * @param v
+	 * @throws PacketIOException
+	 */
+	default void writeVarLong(WriteObjectType out, long v) throws PacketIOException {
+		while((v & ~0x7FL) != 0) {
+			writeByte(out, (byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		writeByte(out, (byte)v);
+	}
+	
+	/**
+	 * запись id типа перед значением (массивы, Object)<br />
+	 * по умолчанию int; писатель с таблицей типов потока может записать короткий тег
+	 * @param out
+	 * @param tid id типа из реестра
+	 * @throws PacketIOException
+	 */
+	default void writeTypeID(WriteObjectType out, int tid) throws PacketIOException {
+		writeInt(out, tid);
+	}
+	
+	/**
+	 * запись класса по имени (массивы и объекты типов не из реестра)<br />
+	 * по умолчанию строка с именем класса; писатель с таблицей классов потока
+	 * может передать имя один раз, а дальше только номер
+	 * @param out
+	 * @param c класс
+	 * @throws PacketIOException
+	 */
+	default void writeClassName(WriteObjectType out, Class<?> c) throws PacketIOException {
+		writeString(out, c.getName());
+	}
+	
+	/**
+	 * запись строки в стандартном UTF-8 без ограничения длины<br />
+	 * varint длина в байтах, затем байты строки
+	 * @param out
+	 * @param v
+	 * @throws PacketIOException
+	 */
+	default void writeUTF8(WriteObjectType out, String v) throws PacketIOException {
+		byte[] b = UTF8.encode(v);
+		writeVarLong(out, b.length);
+		write(out, b);
+	}
+	
+	/*
+	 * блочная запись массивов примитивов<br />
+	 * формат совпадает с поэлементной записью, реализации могут переопределить
+	 * методы для записи массива одним блоком
+	 */
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeBooleans(WriteObjectType out, boolean[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeBoolean(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeChars(WriteObjectType out, char[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeChar(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeShorts(WriteObjectType out, short[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeShort(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeInts(WriteObjectType out, int[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeInt(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeLongs(WriteObjectType out, long[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeLong(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeFloats(WriteObjectType out, float[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeFloat(out, v[i]); }
+	}
+	
+	/**
+	 * @param out
+	 * @param v массив, из которого будут записаны данные
+	 * @param off смещение от начала массива
+	 * @param len количество записываемых элементов
+	 * @throws PacketIOException
+	 */
+	default void writeDoubles(WriteObjectType out, double[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { writeDouble(out, v[i]); }
+	}
 }
@@ -0,0 +1,23 @@
+package packet.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * класс, для которого при компиляции генерируется сериалайзер (см. {@link PacketTypeProcessor})<br />
+ * сгенерированный класс &lt;Имя&gt;Serialize лежит в том же пакете, наследует packet.serialize.BaseSerialize,
+ * пишет поля напрямую (без reflection и упаковки примитивов)
+ * и содержит static register(Registry) для добавления в реестр<br />
+ * требования к классу: не абстрактный, конструктор без параметров доступен из пакета,
+ * записываемые поля (не static, не transient) не private и не final;
+ * у Serializable класса, как в java serialization, поля базовых классов, не реализующих Serializable, не пишутся
+ * @author Ilya Sokolov
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface PacketType {
+}
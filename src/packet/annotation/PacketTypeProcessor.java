@@ -0,0 +1,312 @@
+package packet.annotation;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * генератор сериалайзеров для классов, помеченных {@link PacketType}<br />
+ * для класса Foo генерируется FooSerialize (для вложенного Foo.Bar - Foo_BarSerialize):
+ * статические id типа, чтение/запись полей напрямую, примитивы без упаковки,
+ * ссылочные поля через BaseSerialize.writeField/readField<br />
+ * порядок полей как у ObjectSerialize: от базового класса к наследнику, внутри класса по имени
+ * @author Ilya Sokolov
+ */
+@SupportedAnnotationTypes("packet.annotation.PacketType")
+public final class PacketTypeProcessor extends AbstractProcessor {
+	/**
+	 * сортировка полей внутри класса
+	 */
+	private static final Comparator<VariableElement> BY_NAME = new Comparator<VariableElement>() {
+		@Override
+		public int compare(VariableElement a, VariableElement b) {
+			return a.getSimpleName().toString().compareTo(b.getSimpleName().toString());
+		}
+	};
+
+	/* (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+	 */
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+	 */
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for(Element e : roundEnv.getElementsAnnotatedWith(PacketType.class)) {
+			if(e.getKind() != ElementKind.CLASS) {
+				error(e, "@PacketType is applicable to classes only");
+				continue;
+			}
+			TypeElement type = (TypeElement)e;
+			List<VariableElement> fields = collectFields(type);
+			if(fields != null && checkClass(type)) {
+				generate(type, fields);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param e элемент
+	 * @param msg сообщение об ошибке компиляции
+	 */
+	private void error(Element e, String msg) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+	}
+
+	/**
+	 * @param type класс
+	 * @return пакет класса
+	 */
+	private String packageOf(TypeElement type) {
+		return processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+	}
+
+	/**
+	 * проверить, что экземпляр класса можно создать из сгенерированного кода
+	 * @param type класс
+	 * @return true - класс подходит
+	 */
+	private boolean checkClass(TypeElement type) {
+		Set<Modifier> mod = type.getModifiers();
+		if(mod.contains(Modifier.ABSTRACT)) {
+			error(type, "@PacketType class must not be abstract");
+			return false;
+		}
+		if(mod.contains(Modifier.PRIVATE) ||
+				(type.getNestingKind() == NestingKind.MEMBER && !mod.contains(Modifier.STATIC)) ||
+				type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+			error(type, "@PacketType class must be top level or static nested and not private");
+			return false;
+		}
+		for(ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if(c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) { return true; }
+		}
+		error(type, "@PacketType class must have a non-private no-arg constructor");
+		return false;
+	}
+
+	/**
+	 * @param type класс
+	 * @return записываемые поля в порядке записи или null - есть недоступные поля
+	 */
+	private List<VariableElement> collectFields(TypeElement type) {
+		String pkg = packageOf(type);
+		boolean serializable = isSerializable(type);
+		List<List<VariableElement>> chain = new ArrayList<>();
+		for(TypeElement k = type; k != null; k = superclassOf(k)) {
+			//как ObjectSerialize и java serialization: у Serializable класса
+			//поля базовых классов, не реализующих Serializable, не пишутся
+			if(serializable && !isSerializable(k)) { break; }
+			List<VariableElement> declared = new ArrayList<>();
+			for(VariableElement f : ElementFilter.fieldsIn(k.getEnclosedElements())) {
+				Set<Modifier> mod = f.getModifiers();
+				if(mod.contains(Modifier.STATIC) || mod.contains(Modifier.TRANSIENT)) { continue; }
+				declared.add(f);
+			}
+			Collections.sort(declared, BY_NAME);
+			chain.add(0, declared);
+		}
+
+		boolean ok = true;
+		List<VariableElement> fields = new ArrayList<>();
+		for(List<VariableElement> declared : chain) {
+			for(VariableElement f : declared) {
+				Set<Modifier> mod = f.getModifiers();
+				boolean samePackage = pkg.equals(packageOf((TypeElement)f.getEnclosingElement()));
+				if(mod.contains(Modifier.PRIVATE) || mod.contains(Modifier.FINAL) ||
+						(!samePackage && !mod.contains(Modifier.PUBLIC))) {
+					error(f, "@PacketType field must be accessible from package " + pkg + " and not final (or mark it transient)");
+					ok = false;
+				}
+				fields.add(f);
+			}
+		}
+		return ok ? fields : null;
+	}
+
+	/**
+	 * @param type класс
+	 * @return true - класс реализует java.io.Serializable
+	 */
+	private boolean isSerializable(TypeElement type) {
+		TypeElement serializable = processingEnv.getElementUtils().getTypeElement("java.io.Serializable");
+		return processingEnv.getTypeUtils().isAssignable(
+				processingEnv.getTypeUtils().erasure(type.asType()), serializable.asType());
+	}
+
+	/**
+	 * @param type класс
+	 * @return базовый класс или null (java.lang.Object и выше)
+	 */
+	private TypeElement superclassOf(TypeElement type) {
+		TypeMirror sup = type.getSuperclass();
+		if(sup.getKind() != TypeKind.DECLARED) { return null; }
+		TypeElement e = (TypeElement)((DeclaredType)sup).asElement();
+		return e.getQualifiedName().contentEquals("java.lang.Object") ? null : e;
+	}
+
+	/**
+	 * @param kind примитивный тип
+	 * @return суффикс методов Reader/Writer (Int для readInt/writeInt)
+	 */
+	private static String primitiveName(TypeKind kind) {
+		switch(kind) {
+			case BOOLEAN: return "Boolean";
+			case BYTE: return "Byte";
+			case CHAR: return "Char";
+			case SHORT: return "Short";
+			case INT: return "Int";
+			case LONG: return "Long";
+			case FLOAT: return "Float";
+			case DOUBLE: return "Double";
+			default: return null;
+		}
+	}
+
+	/**
+	 * @param erased стёртый тип
+	 * @return true - final класс, не DynamicID
+	 */
+	private boolean isFinalClass(TypeMirror erased) {
+		if(erased.getKind() != TypeKind.DECLARED) { return false; }
+		if(!((DeclaredType)erased).asElement().getModifiers().contains(Modifier.FINAL)) { return false; }
+		TypeElement dynamic = processingEnv.getElementUtils().getTypeElement("packet.DynamicID");
+		return dynamic == null || !processingEnv.getTypeUtils().isAssignable(erased, dynamic.asType());
+	}
+
+	/**
+	 * @param t тип поля
+	 * @return литерал объявленного типа поля для writeField/readField или "null"
+	 * (правила как у ObjectSerialize: final класс, не DynamicID, не многомерный массив,
+	 * массив только из примитивов или final элементов)
+	 */
+	private String declaredLiteral(TypeMirror t) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(t);
+		if(erased.getKind() == TypeKind.ARRAY) {
+			TypeMirror component = ((ArrayType)erased).getComponentType();
+			if(component.getKind().isPrimitive() || isFinalClass(component)) { return erased.toString() + ".class"; }
+			return "null";
+		}
+		return isFinalClass(erased) ? erased.toString() + ".class" : "null";
+	}
+
+	/**
+	 * @param type класс
+	 * @param f поле класса или базового класса
+	 * @return выражение доступа к полю через переменную o<br />
+	 * поле базового класса - через приведение к нему, иначе поле, скрытое полем
+	 * наследника с тем же именем, было бы недоступно
+	 */
+	private String access(TypeElement type, VariableElement f) {
+		TypeElement owner = (TypeElement)f.getEnclosingElement();
+		if(owner.equals(type)) { return "o." + f.getSimpleName(); }
+		return "((" + processingEnv.getTypeUtils().erasure(owner.asType()) + ")o)." + f.getSimpleName();
+	}
+
+	/**
+	 * сгенерировать сериалайзер
+	 * @param type класс
+	 * @param fields поля в порядке записи
+	 */
+	private void generate(TypeElement type, List<VariableElement> fields) {
+		String pkg = packageOf(type);
+		String target = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		String simple = (pkg.isEmpty() ? target : target.substring(pkg.length() + 1)).replace('.', '_') + "Serialize";
+		String name = pkg.isEmpty() ? simple : pkg + "." + simple;
+
+		try(PrintWriter w = new PrintWriter(processingEnv.getFiler().createSourceFile(name, type).openWriter())) {
+			if(!pkg.isEmpty()) {
+				w.println("package " + pkg + ";");
+				w.println();
+			}
+			w.println("/**");
+			w.println(" * " + target + "<br />");
+			w.println(" * сгенерировано " + PacketTypeProcessor.class.getName());
+			w.println(" */");
+			w.println("public class " + simple + " extends packet.serialize.BaseSerialize {");
+			w.println("\tpublic static final Class<?>[] classes = new Class<?>[] { " + target + ".class };");
+			w.println("\tpublic static final int[] classesIDs = new int[] { packet.Registry.calculateThisClassID(classes[0]) };");
+			w.println("\t/**");
+			w.println("\t * добавить сериалайзер в реестр");
+			w.println("\t * @param reg реестр типов");
+			w.println("\t */");
+			w.println("\tpublic static void register(packet.Registry reg) ");
+			w.println("\t\t\tthrows packet.Registry.DuplicateTypeIDException, CloneNotSupportedException {");
+			w.println("\t\treg.addType(new " + simple + "());");
+			w.println("\t}");
+			w.println("\t@Override");
+			w.println("\tpublic Class<?>[] supportedClasses() { return classes; }");
+			w.println("\t@Override");
+			w.println("\tpublic int[] supportedClassesIDs() { return classesIDs; }");
+
+			w.println("\t@SuppressWarnings(\"unchecked\")");
+			w.println("\t@Override");
+			w.println("\tpublic <T, ReadObjectType> T read(ReadObjectType in, packet.Registry reg, packet.Reader<ReadObjectType> reader)");
+			w.println("\t\t\tthrows packet.PacketIOException {");
+			w.println("\t\t" + target + " o = new " + target + "();");
+			for(VariableElement f : fields) {
+				TypeMirror t = f.asType();
+				String p = primitiveName(t.getKind());
+				if(p != null) {
+					w.println("\t\t" + access(type, f) + " = reader.read" + p + "(in);");
+				}
+				else {
+					String erased = processingEnv.getTypeUtils().erasure(t).toString();
+					//приведение к Object - лишнее (-Xlint:cast)
+					String cast = erased.equals("java.lang.Object") ? "" : "(" + erased + ")";
+					w.println("\t\t" + access(type, f) + " = " + cast + "readField(in, " +
+							declaredLiteral(t) + ", reg, reader);");
+				}
+			}
+			w.println("\t\treturn (T)o;");
+			w.println("\t}");
+
+			w.println("\t@Override");
+			w.println("\tpublic <T, WriteObjectType> void write(WriteObjectType out, T v, packet.Registry reg, packet.Writer<WriteObjectType> writer)");
+			w.println("\t\t\tthrows packet.PacketIOException {");
+			w.println("\t\t" + target + " o = (" + target + ")v;");
+			for(VariableElement f : fields) {
+				TypeMirror t = f.asType();
+				String p = primitiveName(t.getKind());
+				if(p != null) {
+					w.println("\t\twriter.write" + p + "(out, " + access(type, f) + ");");
+				}
+				else {
+					w.println("\t\twriteField(out, " + access(type, f) + ", " + declaredLiteral(t) + ", reg, writer);");
+				}
+			}
+			w.println("\t}");
+			w.println("}");
+		} catch (IOException e) {
+			error(type, "cannot generate " + name + ": " + e);
+		}
+	}
+}
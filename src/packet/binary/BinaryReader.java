@@ -1,125 +1,245 @@
 package packet.binary;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 
-import packet.InputStreamDispatcher;
+import packet.ModifiedUTF8;
 import packet.PacketIOException;
 import packet.Reader;
 
 /**
- * реализация интерфейса читателя для бинароного вывода
+ * реализация интерфейса читателя для бинароного вывода<br />
+ * формат совпадает с DataInputStream (big-endian, modified UTF-8 для строк)<br />
+ * не хранит состояния потока - числа собираются из отдельно прочитанных байт,
+ * массивы и строки читаются в локальный буфер, поэтому один экземпляр можно
+ * использовать из нескольких потоков без блокировок
  * @author Ilya Sokolow
  * @param <ReadObjectType>
  */
 public final class BinaryReader implements Reader<InputStream> {
-	private final DataInputStream m_DataStream;
-	private final InputStreamDispatcher m_StreamDispatcher;
+	/**
+	 * размер блока для чтения массивов примитивов
+	 */
+	private static final int BLOCK_SIZE = 8192;
 	
-	public BinaryReader() {
-		m_StreamDispatcher = new InputStreamDispatcher();
-		m_DataStream = new DataInputStream(m_StreamDispatcher);
-	}
+	public BinaryReader() { }
 
 	/*
 	 * read byte array
 	 */
-	
-	private final void readByteArray(InputStream in, byte[] b, int off, int len) throws PacketIOException {
+
+	private static void readByteArray(InputStream in, byte[] b, int off, int len) throws PacketIOException {
 		try {
-			synchronized (m_DataStream) {
-				m_StreamDispatcher.putStream(in);
-				try {
-					m_DataStream.read(b, off, len);
-				}
-				finally {
-					m_StreamDispatcher.putStream(null);
-				}
+			int n = 0;
+			while(n < len) {
+				int count = in.read(b, off + n, len - n);
+				if(count < 0) { throw new EOFException(); }
+				n += count;
 			}
 		} catch (IOException e) {
 			throw new PacketIOException(e);
 		}
 	}
-	
+
 	@Override
 	public void readBytes(InputStream in, byte[] b) throws PacketIOException {
 		readByteArray(in, b, 0, b.length);
 	}
-	
+
 	@Override
 	public void readBytes(InputStream in, byte[] b, int off, int len) throws PacketIOException {
 		readByteArray(in, b, off, len);
 	}
+
+	/**
+	 * прочитать один байт
+	 * @param in поток
+	 * @return байт 0..255
+	 * @throws IOException
+	 */
+	private static int readUnsigned(InputStream in) throws IOException {
+		int ch = in.read();
+		if(ch < 0) { throw new EOFException(); }
+		return ch;
+	}
 	
 	/*
-	 * read Data
+	 * big-endian decode
 	 */
 	
-	private interface readData <T> {
-		T read(DataInputStream data_in) throws IOException;
+	private static short getShort(byte[] b, int p) {
+		return (short)(((b[p] & 0xFF) << 8) | (b[p + 1] & 0xFF));
 	}
 	
-	private final <T> T readData(readData<T> read, InputStream in) throws PacketIOException {
-		try {
-			synchronized (m_DataStream) {
-				m_StreamDispatcher.putStream(in);
-				try {
-					return read.read(m_DataStream);
-				}
-				finally {
-					m_StreamDispatcher.putStream(null);
-				}
-			}
-		} catch (IOException e) {
-			throw new PacketIOException(e);
-		}
+	private static int getInt(byte[] b, int p) {
+		return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
 	}
 	
+	private static long getLong(byte[] b, int p) {
+		return ((long)getInt(b, p) << 32) | (getInt(b, p + 4) & 0xFFFFFFFFL);
+	}
+	
+	/*
+	 * read Data
+	 */
+
 	@Override
 	public boolean readBoolean(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readBoolean(); }, in);
+		return readByte(in) != 0;
 	}
-	
+
 	@Override
 	public byte readByte(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readByte(); }, in);
+		try {
+			return (byte)readUnsigned(in);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
 	}
-	
+
 	@Override
 	public char readChar(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readChar(); }, in);
+		return (char)readShort(in);
 	}
-	
+
 	@Override
 	public double readDouble(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readDouble(); }, in);
+		return Double.longBitsToDouble(readLong(in));
 	}
-	
+
 	@Override
 	public float readFloat(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readFloat(); }, in);
+		return Float.intBitsToFloat(readInt(in));
 	}
-	
+
 	@Override
 	public int readInt(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readInt(); }, in);
+		try {
+			return (readUnsigned(in) << 24) | (readUnsigned(in) << 16) | (readUnsigned(in) << 8) | readUnsigned(in);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
 	}
-	
+
 	@Override
 	public long readLong(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readLong(); }, in);
+		return ((long)readInt(in) << 32) | (readInt(in) & 0xFFFFFFFFL);
 	}
-	
+
 	@Override
 	public short readShort(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readShort(); }, in);
+		try {
+			return (short)((readUnsigned(in) << 8) | readUnsigned(in));
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
 	}
-	
+
 	@Override
 	public String readString(InputStream in) throws PacketIOException {
-		return readData((DataInputStream data_in) -> { return data_in.readUTF(); }, in);
+		int utflen = readShort(in) & 0xFFFF;
+		byte[] b = new byte[utflen];
+		readByteArray(in, b, 0, utflen);
+		try {
+			return ModifiedUTF8.decode(b, 0, utflen);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/*
+	 * read primitive arrays<br />
+	 * массив читается блоками по BLOCK_SIZE байт
+	 */
+	@Override
+	public void readBooleans(InputStream in, boolean[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE)];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE);
+			readByteArray(in, b, 0, n);
+			for(int i = 0; i < n; ++i) { v[off++] = b[i] != 0; }
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readChars(InputStream in, char[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 2) * 2];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 2);
+			readByteArray(in, b, 0, n * 2);
+			for(int i = 0, p = 0; i < n; ++i, p += 2) {
+				v[off++] = (char)getShort(b, p);
+			}
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readShorts(InputStream in, short[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 2) * 2];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 2);
+			readByteArray(in, b, 0, n * 2);
+			for(int i = 0, p = 0; i < n; ++i, p += 2) {
+				v[off++] = getShort(b, p);
+			}
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readInts(InputStream in, int[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 4) * 4];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 4);
+			readByteArray(in, b, 0, n * 4);
+			for(int i = 0, p = 0; i < n; ++i, p += 4) {
+				v[off++] = getInt(b, p);
+			}
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readLongs(InputStream in, long[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 8) * 8];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 8);
+			readByteArray(in, b, 0, n * 8);
+			for(int i = 0, p = 0; i < n; ++i, p += 8) {
+				v[off++] = getLong(b, p);
+			}
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readFloats(InputStream in, float[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 4) * 4];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 4);
+			readByteArray(in, b, 0, n * 4);
+			for(int i = 0, p = 0; i < n; ++i, p += 4) {
+				v[off++] = Float.intBitsToFloat(getInt(b, p));
+			}
+			len -= n;
+		}
+	}
+	
+	@Override
+	public void readDoubles(InputStream in, double[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 8) * 8];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 8);
+			readByteArray(in, b, 0, n * 8);
+			for(int i = 0, p = 0; i < n; ++i, p += 8) {
+				v[off++] = Double.longBitsToDouble(getLong(b, p));
+			}
+			len -= n;
+		}
 	}
 	
 	@SuppressWarnings("unchecked")
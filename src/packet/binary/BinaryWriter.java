@@ -1,125 +1,265 @@
 package packet.binary;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 
-import packet.OutputStreamDispatcher;
+import packet.ModifiedUTF8;
 import packet.PacketIOException;
 import packet.Writer;
 
 /**
- * реализация интерфейса писателя для бинароного вывода
+ * реализация интерфейса писателя для бинароного вывода<br />
+ * формат совпадает с DataOutputStream (big-endian, modified UTF-8 для строк)<br />
+ * не хранит состояния потока - числа пишутся в поток побайтно, массивы и строки
+ * кодируются в локальный буфер и передаются потоку одной записью,
+ * поэтому один экземпляр можно использовать из нескольких потоков без блокировок
  * @author Ilya Sokolov
  * @param <WriteObjectType>
  */
 public final class BinaryWriter implements Writer<OutputStream> {
-	private final DataOutputStream m_DataStream;
-	private final OutputStreamDispatcher m_StreamDispatcher;
-	
-	public BinaryWriter() {
-		m_StreamDispatcher = new OutputStreamDispatcher();
-		m_DataStream = new DataOutputStream(m_StreamDispatcher);
-	}
+	/**
+	 * размер блока для записи массивов примитивов
+	 */
+	private static final int BLOCK_SIZE = 8192;
 	
+	public BinaryWriter() { }
+
 	/*
 	 * write byte array
 	 */
-	
-	private final void writeByteArray(OutputStream out, byte[] b, int off, int len) throws PacketIOException {
+
+	private static void writeByteArray(OutputStream out, byte[] b, int off, int len) throws PacketIOException {
 		try {
-			synchronized (m_DataStream) {
-				m_StreamDispatcher.putStream(out);
-				try {
-					m_DataStream.write(b, off, len);
-				}
-				finally {
-					m_StreamDispatcher.putStream(null);
-				}
-			}
+			out.write(b, off, len);
 		} catch (IOException e) {
 			throw new PacketIOException(e);
 		}
 	}
-	
+
 	@Override
 	public void write(OutputStream out, byte[] b) throws PacketIOException {
 		writeByteArray(out, b, 0, b.length);
 	}
-	
+
 	@Override
 	public void write(OutputStream out, byte[] b, int off, int len) throws PacketIOException {
 		writeByteArray(out, b, off, len);
 	}
-	
+
 	/*
 	 * write Data
 	 */
-	
-	private interface writeData <T> {
-		void write(DataOutputStream data_out, T instance) throws IOException;
+
+	@Override
+	public void writeBoolean(OutputStream out, boolean v) throws PacketIOException {
+		writeByte(out, (byte)(v ? 1 : 0));
 	}
-	
-	private final <T> void writeData(writeData<T> write, OutputStream out, T instance) throws PacketIOException {
+
+	@Override
+	public void writeByte(OutputStream out, byte v) throws PacketIOException {
 		try {
-			synchronized (m_DataStream) {
-				m_StreamDispatcher.putStream(out);
-				try {
-					write.write(m_DataStream, instance);
-				}
-				finally {
-					m_StreamDispatcher.putStream(null);
-				}
-			}
+			out.write(v);
 		} catch (IOException e) {
 			throw new PacketIOException(e);
 		}
 	}
-	
+
 	@Override
-	public void writeBoolean(OutputStream out, boolean v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Boolean data_v) -> { data_out.writeBoolean(data_v); }, out, v);
+	public void writeChar(OutputStream out, char v) throws PacketIOException {
+		writeShort(out, (short)v);
 	}
-	
+
 	@Override
-	public void writeByte(OutputStream out, byte v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Byte data_v) -> { data_out.writeByte(data_v); }, out, v);
+	public void writeDouble(OutputStream out, double v) throws PacketIOException {
+		writeLong(out, Double.doubleToLongBits(v));
 	}
-	
+
 	@Override
-	public void writeChar(OutputStream out, char v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Character data_v) -> { data_out.writeChar(data_v); }, out, v);
+	public void writeFloat(OutputStream out, float v) throws PacketIOException {
+		writeInt(out, Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeInt(OutputStream out, int v) throws PacketIOException {
+		try {
+			out.write(v >>> 24);
+			out.write(v >>> 16);
+			out.write(v >>> 8);
+			out.write(v);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeLong(OutputStream out, long v) throws PacketIOException {
+		writeInt(out, (int)(v >>> 32));
+		writeInt(out, (int)v);
+	}
+
+	@Override
+	public void writeShort(OutputStream out, short v) throws PacketIOException {
+		try {
+			out.write(v >>> 8);
+			out.write(v);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeString(OutputStream out, String v) throws PacketIOException {
+		int utflen = ModifiedUTF8.encodedLength(v);
+		if(utflen > ModifiedUTF8.MAX_LENGTH) {
+			throw new PacketIOException(new UTFDataFormatException("encoded string too long: " + utflen + " bytes"));
+		}
+		byte[] b = new byte[utflen + 2];
+		b[0] = (byte)(utflen >>> 8);
+		b[1] = (byte)utflen;
+		ModifiedUTF8.encode(v, b, 2);
+		writeByteArray(out, b, 0, b.length);
+	}
+
+	@Override
+	public void writeVarLong(OutputStream out, long v) throws PacketIOException {
+		try {
+			while((v & ~0x7FL) != 0) {
+				out.write((int)((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			out.write((int)v);
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/*
+	 * write primitive arrays<br />
+	 * массив кодируется блоками по BLOCK_SIZE байт, каждый блок - одна запись в поток
+	 */
+	@Override
+	public void writeBooleans(OutputStream out, boolean[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE)];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE);
+			for(int i = 0; i < n; ++i) { b[i] = (byte)(v[off++] ? 1 : 0); }
+			writeByteArray(out, b, 0, n);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeDouble(OutputStream out, double v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Double data_v) -> { data_out.writeDouble(data_v); }, out, v);
+	public void writeChars(OutputStream out, char[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 2) * 2];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 2);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				int x = v[off++];
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeFloat(OutputStream out, float v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Float data_v) -> { data_out.writeFloat(data_v); }, out, v);
+	public void writeShorts(OutputStream out, short[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 2) * 2];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 2);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				int x = v[off++];
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeInt(OutputStream out, int v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Integer data_v) -> { data_out.writeInt(data_v); }, out, v);
+	public void writeInts(OutputStream out, int[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 4) * 4];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 4);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				int x = v[off++];
+				b[p++] = (byte)(x >>> 24);
+				b[p++] = (byte)(x >>> 16);
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeLong(OutputStream out, long v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Long data_v) -> { data_out.writeLong(data_v); }, out, v);
+	public void writeLongs(OutputStream out, long[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 8) * 8];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 8);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				long x = v[off++];
+				b[p++] = (byte)(x >>> 56);
+				b[p++] = (byte)(x >>> 48);
+				b[p++] = (byte)(x >>> 40);
+				b[p++] = (byte)(x >>> 32);
+				b[p++] = (byte)(x >>> 24);
+				b[p++] = (byte)(x >>> 16);
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeShort(OutputStream out, short v) throws PacketIOException {
-		writeData((DataOutputStream data_out, Short data_v) -> { data_out.writeShort(data_v); }, out, v);
+	public void writeFloats(OutputStream out, float[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 4) * 4];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 4);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				int x = Float.floatToIntBits(v[off++]);
+				b[p++] = (byte)(x >>> 24);
+				b[p++] = (byte)(x >>> 16);
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
-	public void writeString(OutputStream out, String v) throws PacketIOException {
-		writeData((DataOutputStream data_out, String data_v) -> { data_out.writeUTF(data_v); }, out, v);
+	public void writeDoubles(OutputStream out, double[] v, int off, int len) throws PacketIOException {
+		byte[] b = new byte[Math.min(len, BLOCK_SIZE / 8) * 8];
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE / 8);
+			int p = 0;
+			for(int i = 0; i < n; ++i) {
+				long x = Double.doubleToLongBits(v[off++]);
+				b[p++] = (byte)(x >>> 56);
+				b[p++] = (byte)(x >>> 48);
+				b[p++] = (byte)(x >>> 40);
+				b[p++] = (byte)(x >>> 32);
+				b[p++] = (byte)(x >>> 24);
+				b[p++] = (byte)(x >>> 16);
+				b[p++] = (byte)(x >>> 8);
+				b[p++] = (byte)x;
+			}
+			writeByteArray(out, b, 0, p);
+			len -= n;
+		}
 	}
 	
 	@Override
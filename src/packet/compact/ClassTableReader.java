@@ -0,0 +1,63 @@
+package packet.compact;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import packet.DelegateReader;
+import packet.PacketIOException;
+import packet.Reader;
+
+/**
+ * читатель с таблицей классов потока, записанного {@link ClassTableWriter}<br />
+ * класс ищется по имени (Class.forName без инициализации) один раз при первой передаче,
+ * дальше берётся из таблицы по номеру<br />
+ * экземпляр хранит состояние одного потока (соединения) и не потокобезопасен
+ * @author Ilya Sokolov
+ * @param <ReadObjectType> тип объекта ввода/вывода
+ */
+public final class ClassTableReader<ReadObjectType> extends DelegateReader<ReadObjectType> {
+	/**
+	 * таблица классов, индекс - номер класса
+	 */
+	private Class<?>[] m_Table = new Class<?>[16];
+	/**
+	 * количество классов в таблице
+	 */
+	private int m_Size = 0;
+	
+	/**
+	 * @param reader читатель для остальных типов и новых классов
+	 */
+	public ClassTableReader(Reader<ReadObjectType> reader) {
+		super(reader);
+	}
+	
+	/**
+	 * очистить таблицу<br />
+	 * вызывается в той же точке потока, что и {@link ClassTableWriter#reset()}
+	 */
+	public void reset() {
+		Arrays.fill(m_Table, 0, m_Size, null);
+		m_Size = 0;
+	}
+	
+	@Override
+	public Class<?> readClass(ReadObjectType in) throws PacketIOException {
+		long tag = m_Reader.readVarLong(in);
+		if(tag != ClassTableWriter.LITERAL) {
+			if(tag < 1 || tag > m_Size) { throw new PacketIOException(new StreamCorruptedException("unknown class index: " + (tag - 1))); }
+			return m_Table[(int)tag - 1];
+		}
+		
+		String name = m_Reader.readString(in);
+		Class<?> c;
+		try {
+			c = Class.forName(name, false, ClassTableReader.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new PacketIOException(e);
+		}
+		if(m_Size == m_Table.length) { m_Table = Arrays.copyOf(m_Table, m_Size * 2); }
+		m_Table[m_Size++] = c;
+		return c;
+	}
+}
@@ -0,0 +1,58 @@
+package packet.compact;
+
+import java.util.IdentityHashMap;
+
+import packet.DelegateWriter;
+import packet.PacketIOException;
+import packet.Writer;
+
+/**
+ * писатель с таблицей классов потока<br />
+ * первая запись класса ({@link Writer#writeClassName}) передаёт имя и присваивает классу номер,
+ * повторные записи передают только номер<br />
+ * формат: varint 0 и имя класса (writeString писателя, которому перенаправляются вызовы)
+ * или varint номер + 1<br />
+ * экземпляр хранит состояние одного потока (соединения) и не потокобезопасен,
+ * читать нужно через {@link ClassTableReader}
+ * @author Ilya Sokolov
+ * @param <WriteObjectType> тип объекта ввода/вывода
+ */
+public final class ClassTableWriter<WriteObjectType> extends DelegateWriter<WriteObjectType> {
+	/**
+	 * признак класса, переданного по имени
+	 */
+	static final int LITERAL = 0;
+	
+	/**
+	 * таблица: ключ - класс; значение - номер класса
+	 */
+	private final IdentityHashMap<Class<?>, Integer> m_Table = new IdentityHashMap<>();
+	
+	/**
+	 * @param writer писатель для остальных типов и новых классов
+	 */
+	public ClassTableWriter(Writer<WriteObjectType> writer) {
+		super(writer);
+	}
+	
+	/**
+	 * очистить таблицу<br />
+	 * вызывается в той же точке потока, что и {@link ClassTableReader#reset()}
+	 */
+	public void reset() {
+		m_Table.clear();
+	}
+	
+	@Override
+	public void writeClassName(WriteObjectType out, Class<?> c) throws PacketIOException {
+		Integer index = m_Table.get(c);
+		if(index != null) {
+			m_Writer.writeVarLong(out, index + 1);
+			return;
+		}
+		
+		m_Writer.writeVarLong(out, LITERAL);
+		m_Writer.writeString(out, c.getName());
+		m_Table.put(c, m_Table.size());
+	}
+}
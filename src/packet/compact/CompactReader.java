@@ -0,0 +1,72 @@
+package packet.compact;
+
+import java.io.StreamCorruptedException;
+
+import packet.DelegateReader;
+import packet.PacketIOException;
+import packet.Reader;
+
+/**
+ * компактный читатель<br />
+ * читает int и long в формате varint с zigzag-кодированием знака
+ * и строки в UTF-8, записанные {@link CompactWriter}<br />
+ * остальные типы читаются читателем, которому перенаправляются вызовы
+ * @author Ilya Sokolov
+ * @param <ReadObjectType> тип объекта ввода/вывода
+ */
+public final class CompactReader<ReadObjectType> extends DelegateReader<ReadObjectType> {
+	/**
+	 * @param reader читатель для остальных типов (например BinaryReader)
+	 */
+	public CompactReader(Reader<ReadObjectType> reader) {
+		super(reader);
+	}
+	
+	/**
+	 * @param v zigzag-кодированное беззнаковое число
+	 * @return знаковое число
+	 */
+	public static int unzigzag32(long v) {
+		int z = (int)v;
+		return (z >>> 1) ^ -(z & 1);
+	}
+	
+	/**
+	 * @param v zigzag-кодированное беззнаковое число
+	 * @return знаковое число
+	 */
+	public static long unzigzag64(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	private int readVarInt(ReadObjectType in) throws PacketIOException {
+		long v = m_Reader.readVarLong(in);
+		if((v >>> 32) != 0) { throw new PacketIOException(new StreamCorruptedException("varint overflows int")); }
+		return unzigzag32(v);
+	}
+	
+	@Override
+	public int readInt(ReadObjectType in) throws PacketIOException {
+		return readVarInt(in);
+	}
+	
+	@Override
+	public long readLong(ReadObjectType in) throws PacketIOException {
+		return unzigzag64(m_Reader.readVarLong(in));
+	}
+	
+	@Override
+	public void readInts(ReadObjectType in, int[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = readVarInt(in); }
+	}
+	
+	@Override
+	public void readLongs(ReadObjectType in, long[] b, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { b[i] = unzigzag64(m_Reader.readVarLong(in)); }
+	}
+	
+	@Override
+	public String readString(ReadObjectType in) throws PacketIOException {
+		return m_Reader.readUTF8(in);
+	}
+}
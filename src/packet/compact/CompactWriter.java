@@ -0,0 +1,65 @@
+package packet.compact;
+
+import packet.DelegateWriter;
+import packet.PacketIOException;
+import packet.Writer;
+
+/**
+ * компактный писатель<br />
+ * int и long (включая длины массивов) записываются в формате varint (LEB128)
+ * с zigzag-кодированием знака: малые по модулю значения занимают 1-2 байта<br />
+ * строки записываются в стандартном UTF-8 с varint длиной, без ограничения в 64 КБ<br />
+ * остальные типы записываются писателем, которому перенаправляются вызовы<br />
+ * режим выбирается для всего потока: читать нужно через {@link CompactReader}
+ * @author Ilya Sokolov
+ * @param <WriteObjectType> тип объекта ввода/вывода
+ */
+public final class CompactWriter<WriteObjectType> extends DelegateWriter<WriteObjectType> {
+	/**
+	 * @param writer писатель для остальных типов (например BinaryWriter)
+	 */
+	public CompactWriter(Writer<WriteObjectType> writer) {
+		super(writer);
+	}
+	
+	/**
+	 * @param v знаковое число
+	 * @return zigzag-кодированное беззнаковое число
+	 */
+	public static long zigzag(int v) {
+		return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * @param v знаковое число
+	 * @return zigzag-кодированное беззнаковое число
+	 */
+	public static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+	
+	@Override
+	public void writeInt(WriteObjectType out, int v) throws PacketIOException {
+		m_Writer.writeVarLong(out, zigzag(v));
+	}
+	
+	@Override
+	public void writeLong(WriteObjectType out, long v) throws PacketIOException {
+		m_Writer.writeVarLong(out, zigzag(v));
+	}
+	
+	@Override
+	public void writeInts(WriteObjectType out, int[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { m_Writer.writeVarLong(out, zigzag(v[i])); }
+	}
+	
+	@Override
+	public void writeLongs(WriteObjectType out, long[] v, int off, int len) throws PacketIOException {
+		for(int i = off; i < off + len; ++i) { m_Writer.writeVarLong(out, zigzag(v[i])); }
+	}
+	
+	@Override
+	public void writeString(WriteObjectType out, String v) throws PacketIOException {
+		m_Writer.writeUTF8(out, v);
+	}
+}
@@ -0,0 +1,78 @@
+package packet.compact;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import packet.DelegateReader;
+import packet.PacketIOException;
+import packet.Reader;
+
+/**
+ * читатель с таблицей строк потока, записанного {@link StringTableWriter}<br />
+ * для повторных строк возвращается один и тот же экземпляр String из таблицы<br />
+ * экземпляр хранит состояние одного потока и не потокобезопасен
+ * @author Ilya Sokolov
+ * @param <ReadObjectType> тип объекта ввода/вывода
+ */
+public final class StringTableReader<ReadObjectType> extends DelegateReader<ReadObjectType> {
+	/**
+	 * таблица строк, индекс - номер строки
+	 */
+	private String[] m_Table = new String[16];
+	/**
+	 * количество строк в таблице
+	 */
+	private int m_Size = 0;
+	/**
+	 * максимальное количество строк в таблице
+	 */
+	private final int m_Capacity;
+	/**
+	 * максимальная длина строки, попадающей в таблицу
+	 */
+	private final int m_MaxLength;
+	
+	/**
+	 * @param reader читатель для остальных типов и новых строк
+	 */
+	public StringTableReader(Reader<ReadObjectType> reader) {
+		this(reader, StringTableWriter.DEFAULT_CAPACITY, StringTableWriter.DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * @param reader читатель для остальных типов и новых строк
+	 * @param capacity максимальное количество строк в таблице
+	 * @param maxLength максимальная длина строки, попадающей в таблицу
+	 */
+	public StringTableReader(Reader<ReadObjectType> reader, int capacity, int maxLength) {
+		super(reader);
+		if(capacity < 0 || maxLength < 0) { throw new IllegalArgumentException(); }
+		m_Capacity = capacity;
+		m_MaxLength = maxLength;
+	}
+	
+	/**
+	 * очистить таблицу<br />
+	 * вызывается на границе кадра, в той же точке потока, что и {@link StringTableWriter#reset()}
+	 */
+	public void reset() {
+		Arrays.fill(m_Table, 0, m_Size, null);
+		m_Size = 0;
+	}
+	
+	@Override
+	public String readString(ReadObjectType in) throws PacketIOException {
+		long tag = m_Reader.readVarLong(in);
+		if(tag != StringTableWriter.LITERAL) {
+			if(tag < 1 || tag > m_Size) { throw new PacketIOException(new StreamCorruptedException("unknown string index: " + (tag - 1))); }
+			return m_Table[(int)tag - 1];
+		}
+		
+		String v = m_Reader.readString(in);
+		if(m_Size < m_Capacity && v.length() <= m_MaxLength) {
+			if(m_Size == m_Table.length) { m_Table = Arrays.copyOf(m_Table, Math.min(m_Size * 2, m_Capacity)); }
+			m_Table[m_Size++] = v;
+		}
+		return v;
+	}
+}
@@ -0,0 +1,89 @@
+package packet.compact;
+
+import java.util.HashMap;
+
+import packet.DelegateWriter;
+import packet.PacketIOException;
+import packet.Writer;
+
+/**
+ * писатель с таблицей строк потока<br />
+ * первая запись строки передаёт её полностью и добавляет в таблицу,
+ * повторные записи передают только номер строки в таблице<br />
+ * формат: varint 0 и строка (писателем, которому перенаправляются вызовы)
+ * или varint номер + 1<br />
+ * таблица ограничена по размеру, длинные строки в таблицу не попадают<br />
+ * экземпляр хранит состояние одного потока и не потокобезопасен,
+ * читать нужно через {@link StringTableReader} с теми же параметрами
+ * @author Ilya Sokolov
+ * @param <WriteObjectType> тип объекта ввода/вывода
+ */
+public final class StringTableWriter<WriteObjectType> extends DelegateWriter<WriteObjectType> {
+	/**
+	 * максимальное количество строк в таблице по умолчанию
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+	/**
+	 * максимальная длина строки (в символах), попадающей в таблицу, по умолчанию
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 256;
+	/**
+	 * признак строки, переданной полностью
+	 */
+	static final int LITERAL = 0;
+	
+	/**
+	 * таблица: ключ - строка; значение - номер строки
+	 */
+	private final HashMap<String, Integer> m_Table = new HashMap<>();
+	/**
+	 * максимальное количество строк в таблице
+	 */
+	private final int m_Capacity;
+	/**
+	 * максимальная длина строки, попадающей в таблицу
+	 */
+	private final int m_MaxLength;
+	
+	/**
+	 * @param writer писатель для остальных типов и новых строк
+	 */
+	public StringTableWriter(Writer<WriteObjectType> writer) {
+		this(writer, DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * @param writer писатель для остальных типов и новых строк
+	 * @param capacity максимальное количество строк в таблице
+	 * @param maxLength максимальная длина строки, попадающей в таблицу
+	 */
+	public StringTableWriter(Writer<WriteObjectType> writer, int capacity, int maxLength) {
+		super(writer);
+		if(capacity < 0 || maxLength < 0) { throw new IllegalArgumentException(); }
+		m_Capacity = capacity;
+		m_MaxLength = maxLength;
+	}
+	
+	/**
+	 * очистить таблицу<br />
+	 * вызывается на границе кадра, в той же точке потока, что и {@link StringTableReader#reset()}
+	 */
+	public void reset() {
+		m_Table.clear();
+	}
+	
+	@Override
+	public void writeString(WriteObjectType out, String v) throws PacketIOException {
+		Integer index = m_Table.get(v);
+		if(index != null) {
+			m_Writer.writeVarLong(out, index + 1);
+			return;
+		}
+		
+		m_Writer.writeVarLong(out, LITERAL);
+		m_Writer.writeString(out, v);
+		if(m_Table.size() < m_Capacity && v.length() <= m_MaxLength) {
+			m_Table.put(v, m_Table.size());
+		}
+	}
+}
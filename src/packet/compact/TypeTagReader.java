@@ -0,0 +1,106 @@
+package packet.compact;
+
+import java.io.StreamCorruptedException;
+
+import packet.DelegateReader;
+import packet.PacketIOException;
+import packet.Reader;
+import packet.Registry;
+import packet.Registry.NotTypeIDException;
+import packet.Serialize;
+
+/**
+ * читатель с таблицей типов потока, записанного {@link TypeTagWriter}<br />
+ * тег переводится в id типа по массиву таблицы, полученной рукопожатием, а сериалайзер
+ * ({@link #readSerializer}) находится по тегу реестра читателя индексом массива
+ * ({@link Registry#findSerializerByTag}), без поиска по id типа<br />
+ * экземпляр хранит состояние одного потока и не потокобезопасен
+ * @author Ilya Sokolov
+ * @param <ReadObjectType> тип объекта ввода/вывода
+ */
+public final class TypeTagReader<ReadObjectType> extends DelegateReader<ReadObjectType> {
+	/**
+	 * реестр, по тегам которого находятся сериалайзеры
+	 */
+	private final Registry m_Registry;
+	/**
+	 * таблица типов: индекс - тег потока, значение - id типа
+	 */
+	private int[] m_Tids = new int[0];
+	/**
+	 * индекс - тег потока, значение - тег реестра читателя или -1 (тип не добавлялся в реестр при рукопожатии)
+	 */
+	private int[] m_Local = new int[0];
+	
+	/**
+	 * @param reader читатель для остальных типов
+	 * @param reg реестр типов
+	 */
+	public TypeTagReader(Reader<ReadObjectType> reader, Registry reg) {
+		super(reader);
+		if(reg == null) { throw new NullPointerException(); }
+		m_Registry = reg;
+	}
+	
+	/**
+	 * прочитать таблицу типов, переданную {@link TypeTagWriter#writeHandshake}<br />
+	 * таблица не может быть больше количества тегов реестра читателя
+	 * (читатель и писатель регистрируют одни и те же типы)
+	 * @param in объект для чтения
+	 * @throws PacketIOException
+	 */
+	public void readHandshake(ReadObjectType in) throws PacketIOException {
+		long n = m_Reader.readVarLong(in);
+		if(n < 0 || n > m_Registry.getTypeTagCount()) {
+			throw new PacketIOException(new StreamCorruptedException("bad type table size: " + n));
+		}
+		int[] tids = new int[(int)n];
+		int[] local = new int[tids.length];
+		for(int i = 0; i < tids.length; ++i) {
+			tids[i] = m_Reader.readInt(in);
+			local[i] = m_Registry.getTypeTag(tids[i]);
+		}
+		m_Tids = tids;
+		m_Local = local;
+	}
+	
+	/**
+	 * @param in объект для чтения
+	 * @return индекс таблицы типов или -1 - id типа передан полностью
+	 * @throws PacketIOException
+	 */
+	private int readTag(ReadObjectType in) throws PacketIOException {
+		long tag = m_Reader.readVarLong(in);
+		if(tag == TypeTagWriter.LITERAL) { return -1; }
+		if(tag < 1 || tag > m_Tids.length) { throw new PacketIOException(new StreamCorruptedException("unknown type tag: " + (tag - 1))); }
+		return (int)tag - 1;
+	}
+	
+	@Override
+	public int readTypeID(ReadObjectType in) throws PacketIOException {
+		int tag = readTag(in);
+		return tag < 0 ? m_Reader.readInt(in) : m_Tids[tag];
+	}
+	
+	@Override
+	public Serialize readSerializer(ReadObjectType in, Registry reg) throws PacketIOException {
+		int tag = readTag(in);
+		int tid;
+		if(tag < 0) {
+			tid = m_Reader.readInt(in);
+		}
+		else {
+			if(reg == m_Registry && m_Local[tag] >= 0) {
+				Serialize s = reg.findSerializerByTag(m_Local[tag]);
+				if(s != null) { return s; }
+			}
+			tid = m_Tids[tag];
+		}
+		
+		try {
+			return reg.getSerializer(tid);
+		} catch (NotTypeIDException e) {
+			throw new PacketIOException(e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package packet.compact;
+
+import packet.DelegateWriter;
+import packet.PacketIOException;
+import packet.Registry;
+import packet.Writer;
+
+/**
+ * писатель с таблицей типов потока<br />
+ * вместо 4-байтового id типа ({@link Writer#writeTypeID}) пишет плотный тег реестра
+ * ({@link Registry#getTypeTags()}): varint номер + 1, для базовых типов - один байт<br />
+ * таблица тег - id типа передаётся один раз рукопожатием {@link #writeHandshake} в начале потока;
+ * тип, которого не было в реестре при рукопожатии, пишется как varint 0 и int id типа<br />
+ * теги реестра не меняются при удалении типов, поэтому тег переданной таблицы
+ * берётся из реестра ({@link Registry#getTypeTag}) без копии таблицы в писателе<br />
+ * экземпляр хранит состояние одного потока и не потокобезопасен,
+ * читать нужно через {@link TypeTagReader}
+ * @author Ilya Sokolov
+ * @param <WriteObjectType> тип объекта ввода/вывода
+ */
+public final class TypeTagWriter<WriteObjectType> extends DelegateWriter<WriteObjectType> {
+	/**
+	 * признак id типа, переданного полностью
+	 */
+	static final int LITERAL = 0;
+	
+	/**
+	 * реестр, теги которого передаются рукопожатием
+	 */
+	private final Registry m_Registry;
+	/**
+	 * количество тегов, переданных рукопожатием (теги 0..m_Count-1 известны читателю)
+	 */
+	private int m_Count = 0;
+	
+	/**
+	 * @param writer писатель для остальных типов
+	 * @param reg реестр типов
+	 */
+	public TypeTagWriter(Writer<WriteObjectType> writer, Registry reg) {
+		super(writer);
+		if(reg == null) { throw new NullPointerException(); }
+		m_Registry = reg;
+	}
+	
+	/**
+	 * передать таблицу типов реестра<br />
+	 * формат: varint количество тегов, затем int id типа по порядку тегов<br />
+	 * вызывается в начале потока, в той же точке потока, что и {@link TypeTagReader#readHandshake};
+	 * до рукопожатия все id типов пишутся полностью
+	 * @param out объект для записи
+	 * @throws PacketIOException
+	 */
+	public void writeHandshake(WriteObjectType out) throws PacketIOException {
+		int[] tids = m_Registry.getTypeTags();
+		m_Writer.writeVarLong(out, tids.length);
+		for(int tid : tids) { m_Writer.writeInt(out, tid); }
+		m_Count = tids.length;
+	}
+	
+	@Override
+	public void writeTypeID(WriteObjectType out, int tid) throws PacketIOException {
+		int tag = m_Count > 0 ? m_Registry.getTypeTag(tid) : -1;
+		if(tag >= 0 && tag < m_Count) {
+			m_Writer.writeVarLong(out, tag + 1);
+			return;
+		}
+		
+		m_Writer.writeVarLong(out, LITERAL);
+		m_Writer.writeInt(out, tid);
+	}
+}
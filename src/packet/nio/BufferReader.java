@@ -0,0 +1,300 @@
+package packet.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import packet.ModifiedUTF8;
+import packet.PacketIOException;
+import packet.Reader;
+import packet.UTF8;
+
+/**
+ * реализация интерфейса читателя для чтения из ByteBuffer<br />
+ * данные читаются напрямую из буфера (heap или direct), без промежуточных потоков<br />
+ * числа читаются в порядке байт буфера (ByteBuffer.order), в том числе массивы примитивов;
+ * формат совпадает с packet.binary.BinaryReader (modified UTF-8 для строк) при порядке BIG_ENDIAN,
+ * который у буфера по умолчанию
+ * @author Ilya Sokolov
+ */
+public final class BufferReader implements Reader<ByteBuffer> {
+	/**
+	 * поток, читающий из буфера с его текущей позиции<br />
+	 * нужен только для readObject
+	 */
+	private static final class BufferInputStream extends InputStream {
+		private final ByteBuffer m_Buffer;
+
+		BufferInputStream(ByteBuffer buf) { m_Buffer = buf; }
+
+		@Override
+		public int available() {
+			return m_Buffer.remaining();
+		}
+
+		@Override
+		public int read() {
+			return m_Buffer.hasRemaining() ? (m_Buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) { return 0; }
+			if(!m_Buffer.hasRemaining()) { return -1; }
+			int n = Math.min(len, m_Buffer.remaining());
+			m_Buffer.get(b, off, n);
+			return n;
+		}
+	}
+
+	public BufferReader() { }
+
+	/*
+	 * read byte array
+	 */
+
+	@Override
+	public void readBytes(ByteBuffer in, byte[] b) throws PacketIOException {
+		readBytes(in, b, 0, b.length);
+	}
+
+	@Override
+	public void readBytes(ByteBuffer in, byte[] b, int off, int len) throws PacketIOException {
+		try {
+			in.get(b, off, len);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/*
+	 * read Data
+	 */
+
+	@Override
+	public boolean readBoolean(ByteBuffer in) throws PacketIOException {
+		return readByte(in) != 0;
+	}
+
+	@Override
+	public byte readByte(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.get();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public char readChar(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getChar();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public double readDouble(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getDouble();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public float readFloat(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getFloat();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public int readInt(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public long readLong(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public short readShort(ByteBuffer in) throws PacketIOException {
+		try {
+			return in.getShort();
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/**
+	 * чтение строки в modified UTF-8 (как DataInputStream.readUTF)
+	 */
+	@Override
+	public String readString(ByteBuffer in) throws PacketIOException {
+		try {
+			int utflen = in.getShort() & 0xFFFF;
+			if(in.remaining() < utflen) { throw new BufferUnderflowException(); }
+
+			String s;
+			if(in.hasArray()) {
+				//heap буфер - декодируем прямо из массива, без копирования
+				s = ModifiedUTF8.decode(in.array(), in.arrayOffset() + in.position(), utflen);
+				in.position(in.position() + utflen);
+			}
+			else {
+				byte[] b = new byte[utflen];
+				in.get(b);
+				s = ModifiedUTF8.decode(b, 0, utflen);
+			}
+			return s;
+		} catch (BufferUnderflowException | IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public long readVarLong(ByteBuffer in) throws PacketIOException {
+		try {
+			long v = 0;
+			for(int shift = 0; shift < 64; shift += 7) {
+				byte b = in.get();
+				v |= (long)(b & 0x7F) << shift;
+				if((b & 0x80) == 0) { return v; }
+			}
+			throw new StreamCorruptedException("malformed varint");
+		} catch (BufferUnderflowException | StreamCorruptedException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public String readUTF8(ByteBuffer in) throws PacketIOException {
+		long len = readVarLong(in);
+		try {
+			if(len < 0 || len > Integer.MAX_VALUE) { throw new StreamCorruptedException("string too long: " + len); }
+			if(len > in.remaining()) { throw new BufferUnderflowException(); }
+			int n = (int)len;
+			String s;
+			if(in.hasArray()) {
+				//heap буфер - декодируем прямо из массива, без копирования
+				s = UTF8.decode(in.array(), in.arrayOffset() + in.position(), n);
+				in.position(in.position() + n);
+			}
+			else {
+				byte[] b = new byte[n];
+				in.get(b);
+				s = UTF8.decode(b, 0, n);
+			}
+			return s;
+		} catch (BufferUnderflowException | StreamCorruptedException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/*
+	 * read primitive arrays<br />
+	 * массив копируется из буфера одним блоком через view-буфер соответствующего типа
+	 * (view-буфер наследует порядок байт буфера)
+	 */
+	@Override
+	public void readBooleans(ByteBuffer in, boolean[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() < len) { throw new BufferUnderflowException(); }
+			for(int i = off; i < off + len; ++i) { b[i] = in.get() != 0; }
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readChars(ByteBuffer in, char[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 2 < len) { throw new BufferUnderflowException(); }
+			in.asCharBuffer().get(b, off, len);
+			in.position(in.position() + len * 2);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readShorts(ByteBuffer in, short[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 2 < len) { throw new BufferUnderflowException(); }
+			in.asShortBuffer().get(b, off, len);
+			in.position(in.position() + len * 2);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readInts(ByteBuffer in, int[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 4 < len) { throw new BufferUnderflowException(); }
+			in.asIntBuffer().get(b, off, len);
+			in.position(in.position() + len * 4);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readLongs(ByteBuffer in, long[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 8 < len) { throw new BufferUnderflowException(); }
+			in.asLongBuffer().get(b, off, len);
+			in.position(in.position() + len * 8);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readFloats(ByteBuffer in, float[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 4 < len) { throw new BufferUnderflowException(); }
+			in.asFloatBuffer().get(b, off, len);
+			in.position(in.position() + len * 4);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void readDoubles(ByteBuffer in, double[] b, int off, int len) throws PacketIOException {
+		try {
+			if(in.remaining() / 8 < len) { throw new BufferUnderflowException(); }
+			in.asDoubleBuffer().get(b, off, len);
+			in.position(in.position() + len * 8);
+		} catch (BufferUnderflowException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <ObjectType> ObjectType readObject(ByteBuffer in) throws PacketIOException {
+		try {
+			return (ObjectType)(new ObjectInputStream(new BufferInputStream(in))).readObject();
+		} catch (IOException|ClassNotFoundException e) {
+			throw new PacketIOException(e);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package packet.nio;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import packet.ModifiedUTF8;
+import packet.PacketIOException;
+import packet.UTF8;
+import packet.Writer;
+
+/**
+ * реализация интерфейса писателя для записи в ByteBuffer<br />
+ * данные пишутся напрямую в буфер (heap или direct), без промежуточных потоков<br />
+ * числа пишутся в порядке байт буфера (ByteBuffer.order), в том числе массивы примитивов;
+ * формат совпадает с packet.binary.BinaryWriter (modified UTF-8 для строк) при порядке BIG_ENDIAN,
+ * который у буфера по умолчанию
+ * @author Ilya Sokolov
+ */
+public final class BufferWriter implements Writer<ByteBuffer> {
+	/**
+	 * поток, пишущий в буфер с его текущей позиции<br />
+	 * нужен только для writeObject
+	 */
+	private static final class BufferOutputStream extends OutputStream {
+		private final ByteBuffer m_Buffer;
+
+		BufferOutputStream(ByteBuffer buf) { m_Buffer = buf; }
+
+		@Override
+		public void write(int b) throws IOException {
+			try {
+				m_Buffer.put((byte)b);
+			} catch (BufferOverflowException | ReadOnlyBufferException e) {
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			try {
+				m_Buffer.put(b, off, len);
+			} catch (BufferOverflowException | ReadOnlyBufferException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	public BufferWriter() { }
+
+	/*
+	 * write byte array
+	 */
+
+	@Override
+	public void write(ByteBuffer out, byte[] b) throws PacketIOException {
+		write(out, b, 0, b.length);
+	}
+
+	@Override
+	public void write(ByteBuffer out, byte[] b, int off, int len) throws PacketIOException {
+		try {
+			out.put(b, off, len);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/*
+	 * write Data
+	 */
+
+	@Override
+	public void writeBoolean(ByteBuffer out, boolean v) throws PacketIOException {
+		writeByte(out, (byte)(v ? 1 : 0));
+	}
+
+	@Override
+	public void writeByte(ByteBuffer out, byte v) throws PacketIOException {
+		try {
+			out.put(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeChar(ByteBuffer out, char v) throws PacketIOException {
+		try {
+			out.putChar(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeDouble(ByteBuffer out, double v) throws PacketIOException {
+		try {
+			out.putDouble(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeFloat(ByteBuffer out, float v) throws PacketIOException {
+		try {
+			out.putFloat(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeInt(ByteBuffer out, int v) throws PacketIOException {
+		try {
+			out.putInt(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeLong(ByteBuffer out, long v) throws PacketIOException {
+		try {
+			out.putLong(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeShort(ByteBuffer out, short v) throws PacketIOException {
+		try {
+			out.putShort(v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/**
+	 * запись строки в modified UTF-8 (как DataOutputStream.writeUTF)<br />
+	 * unsigned short длина в байтах, затем байты строки
+	 */
+	@Override
+	public void writeString(ByteBuffer out, String v) throws PacketIOException {
+		int utflen = ModifiedUTF8.encodedLength(v);
+		if(utflen > ModifiedUTF8.MAX_LENGTH) {
+			throw new PacketIOException(new UTFDataFormatException("encoded string too long: " + utflen + " bytes"));
+		}
+
+		try {
+			if(out.remaining() < utflen + 2) { throw new BufferOverflowException(); }
+			out.putShort((short)utflen);
+			if(out.hasArray()) {
+				//heap буфер - кодируем прямо в массив, без копирования
+				int end = ModifiedUTF8.encode(v, out.array(), out.arrayOffset() + out.position());
+				out.position(end - out.arrayOffset());
+			}
+			else {
+				byte[] b = new byte[utflen];
+				ModifiedUTF8.encode(v, b, 0);
+				out.put(b);
+			}
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	@Override
+	public void writeVarLong(ByteBuffer out, long v) throws PacketIOException {
+		try {
+			while((v & ~0x7FL) != 0) {
+				out.put((byte)((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			out.put((byte)v);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/**
+	 * запись строки в стандартном UTF-8<br />
+	 * varint длина в байтах, затем байты строки<br />
+	 * в heap буфер с запасом места строка кодируется прямо в массив за один проход:
+	 * под длину резервируется varint максимальной длины строки, лишний байт резерва
+	 * убирается сдвигом строки; иначе строка кодируется через String.getBytes
+	 */
+	@Override
+	public void writeUTF8(ByteBuffer out, String v) throws PacketIOException {
+		long maxlen = (long)v.length() * UTF8.MAX_BYTES_PER_CHAR;
+		int reserve = varLongSize(maxlen);
+
+		try {
+			if(out.hasArray() && out.remaining() >= maxlen + reserve) {
+				byte[] b = out.array();
+				int start = out.arrayOffset() + out.position();
+				int end = UTF8.encode(v, b, start + reserve);
+				int utflen = end - start - reserve;
+				int lenlen = varLongSize(utflen);
+				if(lenlen < reserve) {
+					System.arraycopy(b, start + reserve, b, start + lenlen, utflen);
+				}
+				writeVarLong(out, utflen);
+				out.position(out.position() + utflen);
+			}
+			else {
+				byte[] b = UTF8.encode(v);
+				if(out.remaining() < b.length + varLongSize(b.length)) { throw new BufferOverflowException(); }
+				writeVarLong(out, b.length);
+				out.put(b);
+			}
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+
+	/**
+	 * @param v число
+	 * @return байт varint записи числа
+	 */
+	private static int varLongSize(long v) {
+		return (70 - Long.numberOfLeadingZeros(v | 1)) / 7;
+	}
+
+	/*
+	 * write primitive arrays<br />
+	 * массив копируется в буфер одним блоком через view-буфер соответствующего типа
+	 * (view-буфер наследует порядок байт буфера)
+	 */
+	@Override
+	public void writeBooleans(ByteBuffer out, boolean[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() < len) { throw new BufferOverflowException(); }
+			for(int i = off; i < off + len; ++i) { out.put((byte)(v[i] ? 1 : 0)); }
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeChars(ByteBuffer out, char[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 2 < len) { throw new BufferOverflowException(); }
+			out.asCharBuffer().put(v, off, len);
+			out.position(out.position() + len * 2);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeShorts(ByteBuffer out, short[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 2 < len) { throw new BufferOverflowException(); }
+			out.asShortBuffer().put(v, off, len);
+			out.position(out.position() + len * 2);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeInts(ByteBuffer out, int[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 4 < len) { throw new BufferOverflowException(); }
+			out.asIntBuffer().put(v, off, len);
+			out.position(out.position() + len * 4);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeLongs(ByteBuffer out, long[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 8 < len) { throw new BufferOverflowException(); }
+			out.asLongBuffer().put(v, off, len);
+			out.position(out.position() + len * 8);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeFloats(ByteBuffer out, float[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 4 < len) { throw new BufferOverflowException(); }
+			out.asFloatBuffer().put(v, off, len);
+			out.position(out.position() + len * 4);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeDoubles(ByteBuffer out, double[] v, int off, int len) throws PacketIOException {
+		try {
+			if(out.remaining() / 8 < len) { throw new BufferOverflowException(); }
+			out.asDoubleBuffer().put(v, off, len);
+			out.position(out.position() + len * 8);
+		} catch (BufferOverflowException | ReadOnlyBufferException e) {
+			throw new PacketIOException(e);
+		}
+	}
+	
+	@Override
+	public void writeObject(ByteBuffer out, Object v) throws PacketIOException {
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(new BufferOutputStream(out));
+			oos.writeObject(v);
+			oos.flush();
+		} catch (IOException e) {
+			throw new PacketIOException(e);
+		}
+	}
+}
@@ -1,10 +1,13 @@
 package packet.serialize;
 
+import java.io.StreamCorruptedException;
 import java.lang.reflect.Array;
+import java.util.Arrays;
 
 import packet.DynamicID;
 import packet.PacketException;
 import packet.PacketIOException;
+import packet.PrimitiveSerialize;
 import packet.Reader;
 import packet.Registry;
 import packet.Registry.DynamicIDTypeArrayException;
@@ -38,7 +41,9 @@ public final class ArraySerialize extends BaseSerialize {
 		public TypeIsNotArrayException() { super(); }
 	}
 	/**
-	 * это многомерный массив
+	 * это многомерный массив<br />
+	 * не возникает: многомерные массивы записываются в режиме USE_MULTI_DIM
+	 * (оставлено для совместимости)
 	 */
 	@SuppressWarnings("serial")
 	public static final class IsMultiDimArrayException extends PacketException {
@@ -46,23 +51,43 @@ public final class ArraySerialize extends BaseSerialize {
 	}
 	/**
 	 * по id типа (тип есть в реестре)
-	 * int id типа
+	 * id типа ({@link Writer#writeTypeID})
 	 * int длина массива
+	 * массив примитивов записывается одним блоком (см. PrimitiveSerialize)
 	 */
 	private static final byte USE_TYPE_ID = 1;
 	/**
 	 * по имени типа (типа нет в реестре)
-	 * String тип элементов массива
+	 * тип элементов массива ({@link Writer#writeClassName})
 	 * int длина массива
 	 */
 	private static final byte USE_CLASS_NAME = 2;
 	/**
 	 * динамческие структуры данных
-	 * String тип элементов массива
+	 * тип элементов массива ({@link Writer#writeClassName})
 	 * int длина массива
-	 * перед каждым элементов указано int - id типа
+	 * перед каждым элементов указан id типа ({@link Writer#writeTypeID})
 	 */
 	private static final byte USE_DYNAMIC = 4;
+	/**
+	 * многомерный массив
+	 * byte количество измерений (от 2)
+	 * тип элементов последнего измерения как у одномерного массива (USE_TYPE_ID/USE_CLASS_NAME/USE_DYNAMIC с id/классом)
+	 * byte форма: RECTANGULAR или JAGGED
+	 * RECTANGULAR: int длина по каждому измерению, затем строки последнего измерения подряд без длин
+	 * (строки примитивов - одним блоком каждая)
+	 * JAGGED: обход в глубину, перед каждым подмассивом int длина (-1 - null),
+	 * строка последнего измерения сразу за своей длиной
+	 */
+	private static final byte USE_MULTI_DIM = 8;
+	/**
+	 * форма многомерного массива: все подмассивы одного измерения одной длины, без null
+	 */
+	private static final byte RECTANGULAR = 1;
+	/**
+	 * форма многомерного массива: длины подмассивов разные или есть null
+	 */
+	private static final byte JAGGED = 2;
 	
 	/* (non-Javadoc)
 	 * @see packet.Serialize#read(java.lang.Object, packet.Registry, packet.Reader)
@@ -73,36 +98,119 @@ public final class ArraySerialize extends BaseSerialize {
 			throws PacketIOException {
 		Serialize s = null;
 		Class<?> c = null;
-		int len = 0;
+		int dims = 1;
 		byte tflag = reader.readByte(in);
+		if(tflag == USE_MULTI_DIM) {
+			dims = reader.readByte(in) & 0xFF;
+			if(dims < 2) { throw new PacketIOException(new StreamCorruptedException("invalid array dimensions " + dims)); }
+			tflag = reader.readByte(in);
+		}
 		
 		try {
 			switch(tflag) {
 				case USE_TYPE_ID:
-					int tid = reader.readInt(in);
+					int tid = reader.readTypeID(in);
 					s = reg.getSerializer(tid);
 					c = s.classByID(tid);
 					break;
 				case USE_CLASS_NAME:
 				case USE_DYNAMIC:
 					s = reg.getSerializerByClass(Object.class);
-					c = Class.forName(reader.readString(in));
+					c = reader.readClass(in);
 					break;
+				default:
+					throw new PacketIOException(new StreamCorruptedException("invalid array mode " + tflag));
 			}
-			
-			len = reader.readInt(in);
-			Object readArr = Array.newInstance(c, len);
-			for(int i = 0; i < len; ++i) {
-				if(tflag == USE_DYNAMIC) { s = reg.getSerializer(reader.readInt(in)); }
-				Array.set(readArr, i, s.read(in, reg, reader));
-			}
-			
-			return (T)readArr;
 		} catch (NotTypeIDException | NotFoundTypeIDException | 
-				IsMultiLevelArrayException | DynamicIDTypeArrayException | 
-				 ClassNotFoundException e) {
+				IsMultiLevelArrayException | DynamicIDTypeArrayException e) {
 			throw new PacketIOException(e);
 		}
+		boolean dynamic = tflag == USE_DYNAMIC;
+		
+		if(dims == 1) { return (T)readRow(in, reader.readInt(in), c, s, dynamic, reg, reader); }
+		
+		//классы подмассивов по измерениям: types[l] - тип элементов массива измерения l
+		Class<?>[] types = new Class<?>[dims];
+		types[dims - 1] = c;
+		for(int l = dims - 2; l >= 0; --l) { types[l] = Array.newInstance(types[l + 1], 0).getClass(); }
+		
+		byte shape = reader.readByte(in);
+		switch(shape) {
+			case RECTANGULAR: {
+				int[] lengths = new int[dims];
+				for(int l = 0; l < dims; ++l) { lengths[l] = reader.readInt(in); }
+				return (T)readRectangular(in, 0, lengths, types, s, dynamic, reg, reader);
+			}
+			case JAGGED:
+				return (T)readJagged(in, 0, types, s, dynamic, reg, reader);
+			default:
+				throw new PacketIOException(new StreamCorruptedException("invalid array shape " + shape));
+		}
+	}
+	
+	/**
+	 * прочитать одномерный массив (строку последнего измерения)
+	 * @param in объект для чтения
+	 * @param len длина массива
+	 * @param c тип элементов
+	 * @param s сериалайзер элементов
+	 * @param dynamic перед каждым элементом id типа
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return массив
+	 * @throws PacketIOException
+	 */
+	private static <ReadObjectType> Object readRow(ReadObjectType in, int len, Class<?> c, Serialize s, boolean dynamic,
+			Registry reg, Reader<ReadObjectType> reader) throws PacketIOException {
+		if(c.isPrimitive() && s instanceof PrimitiveSerialize) {
+			return ((PrimitiveSerialize)s).readArray(in, len, reader);
+		}
+		
+		Object readArr = Array.newInstance(c, len);
+		for(int i = 0; i < len; ++i) {
+			if(dynamic) { s = reader.readSerializer(in, reg); }
+			Array.set(readArr, i, s.read(in, reg, reader));
+		}
+		return readArr;
+	}
+	
+	/**
+	 * прочитать прямоугольный многомерный массив
+	 * @param level измерение
+	 * @param lengths длины по измерениям
+	 * @param types типы элементов по измерениям
+	 * @return массив измерения level
+	 * @throws PacketIOException
+	 */
+	private static <ReadObjectType> Object readRectangular(ReadObjectType in, int level, int[] lengths, Class<?>[] types,
+			Serialize s, boolean dynamic, Registry reg, Reader<ReadObjectType> reader) throws PacketIOException {
+		if(level == types.length - 1) { return readRow(in, lengths[level], types[level], s, dynamic, reg, reader); }
+		
+		Object[] arr = (Object[])Array.newInstance(types[level], lengths[level]);
+		for(int i = 0; i < arr.length; ++i) {
+			arr[i] = readRectangular(in, level + 1, lengths, types, s, dynamic, reg, reader);
+		}
+		return arr;
+	}
+	
+	/**
+	 * прочитать многомерный массив с разными длинами подмассивов
+	 * @param level измерение
+	 * @param types типы элементов по измерениям
+	 * @return массив измерения level или null
+	 * @throws PacketIOException
+	 */
+	private static <ReadObjectType> Object readJagged(ReadObjectType in, int level, Class<?>[] types,
+			Serialize s, boolean dynamic, Registry reg, Reader<ReadObjectType> reader) throws PacketIOException {
+		int len = reader.readInt(in);
+		if(len < 0) { return null; }
+		if(level == types.length - 1) { return readRow(in, len, types[level], s, dynamic, reg, reader); }
+		
+		Object[] arr = (Object[])Array.newInstance(types[level], len);
+		for(int i = 0; i < len; ++i) {
+			arr[i] = readJagged(in, level + 1, types, s, dynamic, reg, reader);
+		}
+		return arr;
 	}
 	
 	/* (non-Javadoc)
@@ -114,47 +222,154 @@ public final class ArraySerialize extends BaseSerialize {
 		Class<?> vc = v.getClass();
 		if(!vc.isArray()) { throw new PacketIOException(new TypeIsNotArrayException()); }
 		Class<?> cvc = vc.getComponentType();
-		if(cvc.isArray()) { throw new PacketIOException(new IsMultiDimArrayException()); }
+		int dims = 1;
+		while(cvc.isArray()) {
+			cvc = cvc.getComponentType();
+			++dims;
+		}
 		
-		int len = Array.getLength(v);
+		if(dims == 1) {
+			Serialize s = writeComponent(out, cvc, reg, writer);
+			writer.writeInt(out, Array.getLength(v));
+			writeRow(out, v, cvc, s, reg, writer);
+			return;
+		}
+		
+		writer.writeByte(out, USE_MULTI_DIM);
+		writer.writeByte(out, (byte)dims);
+		Serialize s = writeComponent(out, cvc, reg, writer);
+		int[] lengths = new int[dims];
+		Arrays.fill(lengths, -1);
+		if(isRectangular(v, 0, lengths)) {
+			writer.writeByte(out, RECTANGULAR);
+			for(int l = 0; l < dims; ++l) { writer.writeInt(out, Math.max(lengths[l], 0)); }
+			writeRectangular(out, v, 0, dims, cvc, s, reg, writer);
+		}
+		else {
+			writer.writeByte(out, JAGGED);
+			writeJagged(out, v, 0, dims, cvc, s, reg, writer);
+		}
+	}
+	
+	/**
+	 * записать тип элементов массива: режим и id типа или класс
+	 * @param out объект для записи
+	 * @param cvc тип элементов (не массив)
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @return сериалайзер элементов или null - элементы динамического типа (сериалайзер по каждому элементу)
+	 * @throws PacketIOException
+	 */
+	private static <WriteObjectType> Serialize writeComponent(WriteObjectType out, Class<?> cvc, Registry reg, Writer<WriteObjectType> writer)
+			throws PacketIOException {
 		if(DynamicID.class.isAssignableFrom(cvc)) {
 			writer.writeByte(out, USE_DYNAMIC);
-			writer.writeString(out, cvc.getName());
-			writer.writeInt(out, len);
-			for(int i = 0; i < len; ++i) {
-				Object val = Array.get(v, i);
-				int tid = ((DynamicID)val).calculateDynamicID();
-				writer.writeInt(out, tid);
-				try {
-					reg.getSerializer(tid).write(out, val, reg, writer);
-				} catch (NotTypeIDException e) {
-					throw new PacketIOException(e);
-				}
-			}
+			writer.writeClassName(out, cvc);
+			return null;
+		}
+		
+		//cvc не массив и не DynamicID - id класса считается без исключений
+		Serialize s = reg.findSerializerByClass(cvc);
+		if(s != null) {
+			writer.writeByte(out, USE_TYPE_ID);
+			writer.writeTypeID(out, Registry.calculateThisClassID(cvc));
 		}
 		else {
-			try {
-				int tid = Registry.calculateClassID(cvc);
-				Serialize s = null; 
-				
-				try {
-					s = reg.getSerializer(tid);
-					writer.writeByte(out, USE_TYPE_ID);
-					writer.writeInt(out, tid);
-				} catch (NotTypeIDException e) {
-					s = reg.getSerializerByClass(Object.class);
-					writer.writeByte(out, USE_CLASS_NAME);
-					writer.writeString(out, cvc.getName());
-				}
-				
-				writer.writeInt(out, len);
-				for(int i = 0; i < len; ++i) {
-					s.write(out, Array.get(v, i), reg, writer);
-				}
-			} catch (IsMultiLevelArrayException | DynamicIDTypeArrayException|NotTypeIDException e1) {
-				throw new PacketIOException(e1);
+			s = reg.findSerializerByClass(Object.class);
+			if(s == null) { throw new PacketIOException(new NotTypeIDException()); }
+			writer.writeByte(out, USE_CLASS_NAME);
+			writer.writeClassName(out, cvc);
+		}
+		return s;
+	}
+	
+	/**
+	 * записать элементы одномерного массива (строки последнего измерения) без длины
+	 * @param out объект для записи
+	 * @param v массив
+	 * @param cvc тип элементов
+	 * @param s сериалайзер элементов или null - элементы динамического типа
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private static <WriteObjectType> void writeRow(WriteObjectType out, Object v, Class<?> cvc, Serialize s,
+			Registry reg, Writer<WriteObjectType> writer) throws PacketIOException {
+		if(cvc.isPrimitive() && s instanceof PrimitiveSerialize) {
+			((PrimitiveSerialize)s).writeArray(out, v, writer);
+			return;
+		}
+		
+		int len = Array.getLength(v);
+		for(int i = 0; i < len; ++i) {
+			Object val = Array.get(v, i);
+			if(s == null) {
+				int tid = ((DynamicID)val).calculateDynamicID();
+				Serialize ds = reg.findSerializer(tid);
+				if(ds == null) { throw new PacketIOException(new NotTypeIDException()); }
+				writer.writeTypeID(out, tid);
+				ds.write(out, val, reg, writer);
+			}
+			else {
+				s.write(out, val, reg, writer);
 			}
 		}
 	}
-
+	
+	/**
+	 * проверить, что многомерный массив прямоугольный, и собрать длины по измерениям
+	 * @param v массив измерения level
+	 * @param level измерение
+	 * @param lengths длины по измерениям (-1 - ещё не известна)
+	 * @return true - все подмассивы не null и одной длины в каждом измерении
+	 */
+	private static boolean isRectangular(Object v, int level, int[] lengths) {
+		if(v == null) { return false; }
+		int len = Array.getLength(v);
+		if(lengths[level] < 0) { lengths[level] = len; }
+		else if(lengths[level] != len) { return false; }
+		if(level == lengths.length - 1) { return true; }
+		
+		for(Object sub : (Object[])v) {
+			if(!isRectangular(sub, level + 1, lengths)) { return false; }
+		}
+		return true;
+	}
+	
+	/**
+	 * записать строки прямоугольного массива подряд
+	 * @param v массив измерения level
+	 * @param level измерение
+	 * @param dims количество измерений
+	 * @throws PacketIOException
+	 */
+	private static <WriteObjectType> void writeRectangular(WriteObjectType out, Object v, int level, int dims, Class<?> cvc,
+			Serialize s, Registry reg, Writer<WriteObjectType> writer) throws PacketIOException {
+		if(level == dims - 1) {
+			writeRow(out, v, cvc, s, reg, writer);
+			return;
+		}
+		for(Object sub : (Object[])v) { writeRectangular(out, sub, level + 1, dims, cvc, s, reg, writer); }
+	}
+	
+	/**
+	 * записать многомерный массив с длиной перед каждым подмассивом
+	 * @param v массив измерения level или null
+	 * @param level измерение
+	 * @param dims количество измерений
+	 * @throws PacketIOException
+	 */
+	private static <WriteObjectType> void writeJagged(WriteObjectType out, Object v, int level, int dims, Class<?> cvc,
+			Serialize s, Registry reg, Writer<WriteObjectType> writer) throws PacketIOException {
+		if(v == null) {
+			writer.writeInt(out, -1);
+			return;
+		}
+		writer.writeInt(out, Array.getLength(v));
+		if(level == dims - 1) {
+			writeRow(out, v, cvc, s, reg, writer);
+			return;
+		}
+		for(Object sub : (Object[])v) { writeJagged(out, sub, level + 1, dims, cvc, s, reg, writer); }
+	}
 }
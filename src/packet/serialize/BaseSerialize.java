@@ -1,6 +1,10 @@
 package packet.serialize;
 
+import packet.PacketIOException;
+import packet.Reader;
+import packet.Registry;
 import packet.Serialize;
+import packet.Writer;
 
 /**
  * базовый сериалайзер
@@ -29,4 +33,33 @@ public abstract class BaseSerialize implements Serialize {
 			throws NotFoundTypeIDException, InstantiationException, IllegalAccessException {
 		return (T) classByID(tid).newInstance();
 	}
+	/**
+	 * записать значение поля ссылочного типа (может быть null)<br />
+	 * формат совпадает с записью полей в {@link ObjectSerialize}
+	 * @param out объект для записи
+	 * @param v значение поля
+	 * @param declared объявленный тип поля, если он final (не DynamicID, не многомерный массив), иначе null
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	protected static <WriteObjectType> void writeField(
+			WriteObjectType out, Object v, Class<?> declared, Registry reg, Writer<WriteObjectType> writer) 
+			throws PacketIOException {
+		ObjectSerialize.writeValue(out, v, declared, reg, writer);
+	}
+	/**
+	 * прочитать значение поля ссылочного типа, записанное {@link #writeField}
+	 * @param in объект для чтения
+	 * @param declared объявленный тип поля (как при записи)
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return значение поля
+	 * @throws PacketIOException
+	 */
+	protected static <ReadObjectType> Object readField(
+			ReadObjectType in, Class<?> declared, Registry reg, Reader<ReadObjectType> reader) 
+			throws PacketIOException {
+		return ObjectSerialize.readValue(in, declared, reg, reader);
+	}
 }
@@ -1,6 +1,7 @@
 package packet.serialize;
 
 import packet.PacketIOException;
+import packet.PrimitiveSerialize;
 import packet.Reader;
 import packet.Registry;
 import packet.Writer;
@@ -9,7 +10,7 @@ import packet.Writer;
  * char
  * @author Ilya Sokolov
  */
-public class CharSerialize extends BaseSerialize {
+public class CharSerialize extends BaseSerialize implements PrimitiveSerialize {
 	public static final Class<?>[] classes = new Class<?>[] { char.class, Character.class };
 	public static final int[] classesIDs = new int[] { Registry.calculateThisClassID(classes[0]), Registry.calculateThisClassID(classes[1]) };
 	/* (non-Javadoc)
@@ -39,4 +40,45 @@ public class CharSerialize extends BaseSerialize {
 			throws PacketIOException {
 		writer.writeChar(out,(Character)v);
 	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#primitiveClass()
+	 */
+	@Override
+	public Class<?> primitiveClass() { return classes[0]; }
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#readArray(java.lang.Object, int, packet.Reader)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T, ReadObjectType> T readArray(ReadObjectType in, int len, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		char[] arr = new char[len];
+		reader.readChars(in, arr, 0, len);
+		return (T)arr;
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#writeArray(java.lang.Object, java.lang.Object, packet.Writer)
+	 */
+	@Override
+	public <T, WriteObjectType> void writeArray(WriteObjectType out, T v, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		char[] arr = (char[])v;
+		writer.writeChars(out, arr, 0, arr.length);
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#readSlot(java.lang.Object, packet.Reader)
+	 */
+	@Override
+	public <ReadObjectType> long readSlot(ReadObjectType in, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		return reader.readChar(in);
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#writeSlot(java.lang.Object, long, packet.Writer)
+	 */
+	@Override
+	public <WriteObjectType> void writeSlot(WriteObjectType out, long slot, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		writer.writeChar(out, (char)slot);
+	}
 }
@@ -0,0 +1,251 @@
+package packet.serialize;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import packet.DynamicID;
+
+/**
+ * описание класса для записи объекта по полям<br />
+ * поля находятся один раз для класса (кеш {@link ClassValue}),
+ * доступ к полям и конструктору через {@link MethodHandle}<br />
+ * порядок полей стабилен: от базового класса к наследнику, внутри класса по имени;
+ * как в java serialization, пишутся только поля классов, реализующих Serializable
+ * @author Ilya Sokolov
+ */
+final class ClassLayout {
+	/*
+	 * вид поля
+	 */
+	static final byte BOOLEAN = 0;
+	static final byte BYTE = 1;
+	static final byte CHAR = 2;
+	static final byte SHORT = 3;
+	static final byte INT = 4;
+	static final byte LONG = 5;
+	static final byte FLOAT = 6;
+	static final byte DOUBLE = 7;
+	static final byte OBJECT = 8;
+
+	/**
+	 * поле класса
+	 */
+	static final class FieldAccessor {
+		/**
+		 * вид поля
+		 */
+		final byte Kind;
+		/**
+		 * объявленный тип поля, если по нему однозначно находится сериалайзер
+		 * (final класс, не DynamicID, не многомерный массив, массив только из final элементов), иначе null
+		 */
+		final Class<?> Declared;
+		/**
+		 * (Object)type
+		 */
+		final MethodHandle Getter;
+		/**
+		 * (Object, type)void
+		 */
+		final MethodHandle Setter;
+
+		FieldAccessor(byte kind, Class<?> declared, MethodHandle getter, MethodHandle setter) {
+			Kind = kind;
+			Declared = declared;
+			Getter = getter;
+			Setter = setter;
+		}
+	}
+
+	/**
+	 * кеш описаний классов
+	 */
+	private static final ClassValue<ClassLayout> LAYOUTS = new ClassValue<ClassLayout>() {
+		@Override
+		protected ClassLayout computeValue(Class<?> c) {
+			return build(c);
+		}
+	};
+	/**
+	 * описание класса, который пишется только средствами java serialization
+	 */
+	private static final ClassLayout JAVA = new ClassLayout(null, new FieldAccessor[0]);
+	/**
+	 * сортировка полей внутри класса
+	 */
+	private static final Comparator<Field> BY_NAME = new Comparator<Field>() {
+		@Override
+		public int compare(Field a, Field b) { return a.getName().compareTo(b.getName()); }
+	};
+
+	/**
+	 * конструктор без параметров ()Object<br />
+	 * null - класс нельзя записывать по полям
+	 */
+	final MethodHandle Constructor;
+	/**
+	 * поля в порядке записи
+	 */
+	final FieldAccessor[] Fields;
+
+	private ClassLayout(MethodHandle constructor, FieldAccessor[] fields) {
+		Constructor = constructor;
+		Fields = fields;
+	}
+
+	/**
+	 * @param c класс
+	 * @return описание класса
+	 */
+	static ClassLayout get(Class<?> c) {
+		return LAYOUTS.get(c);
+	}
+
+	/**
+	 * @return true - объект класса можно записать по полям
+	 */
+	final boolean useFields() {
+		return Constructor != null;
+	}
+
+	/**
+	 * @param c класс
+	 * @return описание класса, JAVA - если класс нельзя записывать по полям
+	 */
+	private static ClassLayout build(Class<?> c) {
+		//записываем по полям только то, что раньше уходило в java serialization
+		//и не управляет своей сериализацией самостоятельно
+		if(c.isArray() || c.isPrimitive() || c.isInterface() || c.isEnum() ||
+				Modifier.isAbstract(c.getModifiers()) ||
+				!Serializable.class.isAssignableFrom(c) ||
+				Externalizable.class.isAssignableFrom(c)) {
+			return JAVA;
+		}
+
+		try {
+			//как в java serialization: поля базовых классов, не реализующих Serializable, не пишутся
+			ArrayList<Class<?>> chain = new ArrayList<>();
+			Class<?> k = c;
+			for(; Serializable.class.isAssignableFrom(k); k = k.getSuperclass()) {
+				if(hasCustomSerialization(k)) { return JAVA; }
+				chain.add(0, k);
+			}
+			if(!hasSerialConstructor(k, c)) { return JAVA; }
+
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Constructor<?> ctor = c.getDeclaredConstructor();
+			ctor.setAccessible(true);
+			MethodHandle constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+
+			ArrayList<FieldAccessor> fields = new ArrayList<>();
+			for(Class<?> owner : chain) {
+				Field[] declared = owner.getDeclaredFields();
+				Arrays.sort(declared, BY_NAME);
+				for(Field f : declared) {
+					int mod = f.getModifiers();
+					if(Modifier.isStatic(mod) || Modifier.isTransient(mod)) { continue; }
+					f.setAccessible(true);
+					Class<?> type = f.getType();
+					Class<?> handleType = type.isPrimitive() ? type : Object.class;
+					fields.add(new FieldAccessor(
+							kind(type),
+							declaredType(type),
+							lookup.unreflectGetter(f).asType(MethodType.methodType(handleType, Object.class)),
+							lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, handleType))));
+				}
+			}
+
+			return new ClassLayout(constructor, fields.toArray(new FieldAccessor[fields.size()]));
+		} catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+			//нет конструктора без параметров или нет доступа к полям
+			return JAVA;
+		}
+	}
+
+	/**
+	 * @param base первый базовый класс, не реализующий Serializable
+	 * @param c записываемый класс
+	 * @return true - у base есть конструктор без параметров, доступный из c
+	 * (то же требование, что у java serialization)
+	 * @throws NoSuchMethodException нет конструктора без параметров
+	 */
+	private static boolean hasSerialConstructor(Class<?> base, Class<?> c) throws NoSuchMethodException {
+		int mod = base.getDeclaredConstructor().getModifiers();
+		if(Modifier.isPrivate(mod)) { return false; }
+		if(Modifier.isPublic(mod) || Modifier.isProtected(mod)) { return true; }
+		return base.getClassLoader() == c.getClassLoader() && packageName(base).equals(packageName(c));
+	}
+
+	/**
+	 * @param c класс
+	 * @return имя пакета класса
+	 */
+	private static String packageName(Class<?> c) {
+		String name = c.getName();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(0, dot);
+	}
+
+	/**
+	 * @param k класс
+	 * @return true - класс объявляет writeObject/readObject/writeReplace/readResolve
+	 */
+	private static boolean hasCustomSerialization(Class<?> k) {
+		for(Method m : k.getDeclaredMethods()) {
+			if(Modifier.isStatic(m.getModifiers())) { continue; }
+			switch(m.getName()) {
+				case "writeObject":
+				case "readObject":
+				case "readObjectNoData":
+				case "writeReplace":
+				case "readResolve":
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param type тип поля
+	 * @return вид поля
+	 */
+	private static byte kind(Class<?> type) {
+		if(type == boolean.class) { return BOOLEAN; }
+		if(type == byte.class) { return BYTE; }
+		if(type == char.class) { return CHAR; }
+		if(type == short.class) { return SHORT; }
+		if(type == int.class) { return INT; }
+		if(type == long.class) { return LONG; }
+		if(type == float.class) { return FLOAT; }
+		if(type == double.class) { return DOUBLE; }
+		return OBJECT;
+	}
+
+	/**
+	 * @param type тип поля
+	 * @return тип, по которому можно искать сериалайзер без записи id, иначе null<br />
+	 * классы массивов всегда final, поэтому для массива проверяется тип элементов:
+	 * в поле Object[] может лежать String[]
+	 */
+	private static Class<?> declaredType(Class<?> type) {
+		if(type.isPrimitive() || !Modifier.isFinal(type.getModifiers())) { return null; }
+		if(DynamicID.class.isAssignableFrom(type)) { return null; }
+		if(type.isArray()) {
+			Class<?> component = type.getComponentType();
+			if(component.isArray()) { return null; }
+			if(!component.isPrimitive() && (!Modifier.isFinal(component.getModifiers()) ||
+					DynamicID.class.isAssignableFrom(component))) { return null; }
+		}
+		return type;
+	}
+}
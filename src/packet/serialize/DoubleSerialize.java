@@ -1,6 +1,7 @@
 package packet.serialize;
 
 import packet.PacketIOException;
+import packet.PrimitiveSerialize;
 import packet.Reader;
 import packet.Registry;
 import packet.Writer;
@@ -9,7 +10,7 @@ import packet.Writer;
  * double
  * @author Ilya Sokolov
  */
-public class DoubleSerialize extends BaseSerialize {
+public class DoubleSerialize extends BaseSerialize implements PrimitiveSerialize {
 	public static final Class<?>[] classes = new Class<?>[] { double.class, Double.class };
 	public static final int[] classesIDs = new int[] { Registry.calculateThisClassID(classes[0]), Registry.calculateThisClassID(classes[1]) };
 	/* (non-Javadoc)
@@ -39,4 +40,45 @@ public class DoubleSerialize extends BaseSerialize {
 			throws PacketIOException {
 		writer.writeDouble(out, (Double)v);
 	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#primitiveClass()
+	 */
+	@Override
+	public Class<?> primitiveClass() { return classes[0]; }
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#readArray(java.lang.Object, int, packet.Reader)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T, ReadObjectType> T readArray(ReadObjectType in, int len, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		double[] arr = new double[len];
+		reader.readDoubles(in, arr, 0, len);
+		return (T)arr;
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#writeArray(java.lang.Object, java.lang.Object, packet.Writer)
+	 */
+	@Override
+	public <T, WriteObjectType> void writeArray(WriteObjectType out, T v, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		double[] arr = (double[])v;
+		writer.writeDoubles(out, arr, 0, arr.length);
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#readSlot(java.lang.Object, packet.Reader)
+	 */
+	@Override
+	public <ReadObjectType> long readSlot(ReadObjectType in, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		return Double.doubleToRawLongBits(reader.readDouble(in));
+	}
+	/* (non-Javadoc)
+	 * @see packet.PrimitiveSerialize#writeSlot(java.lang.Object, long, packet.Writer)
+	 */
+	@Override
+	public <WriteObjectType> void writeSlot(WriteObjectType out, long slot, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		writer.writeDouble(out, Double.longBitsToDouble(slot));
+	}
 }
@@ -1,17 +1,65 @@
 package packet.serialize;
 
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 import packet.PacketIOException;
 import packet.Reader;
 import packet.Registry;
+import packet.Registry.DynamicIDTypeArrayException;
+import packet.Registry.IsMultiLevelArrayException;
+import packet.Registry.NotTypeIDException;
+import packet.Serialize;
 import packet.Writer;
+import packet.serialize.ClassLayout.FieldAccessor;
 
 /**
- * Object
+ * Object<br />
+ * тип из реестра пишется его сериалайзером (с id типа),
+ * объекты классов, разрешённых в реестре ({@link Registry#allowFields}), пишутся по полям без java serialization<br />
+ * остальные объекты, а также классы, которые нельзя записать по полям
+ * (нет конструктора без параметров, свои writeObject/readObject, нет доступа к полям),
+ * пишутся java serialization (с проверкой jdk.serialFilter при чтении)
  * @author Ilya Sokolov
  */
 public class ObjectSerialize extends BaseSerialize {
 	public static final Class<?>[] classes = new Class<?>[] { Object.class };
 	public static final int[] classesIDs = new int[] { Registry.calculateThisClassID(classes[0]) };
+	/**
+	 * null
+	 */
+	private static final byte USE_NULL = 0;
+	/**
+	 * id типа ({@link Writer#writeTypeID}), затем значение сериалайзером из реестра
+	 */
+	private static final byte USE_TYPE_ID = 1;
+	/**
+	 * класс ({@link Writer#writeClassName}), затем значения полей
+	 */
+	private static final byte USE_FIELDS = 2;
+	/**
+	 * java serialization
+	 */
+	private static final byte USE_JAVA = 3;
+	/**
+	 * значение поля сериалайзером объявленного типа поля (без id)
+	 */
+	private static final byte USE_DECLARED = 4;
+
+	/**
+	 * объекты, записываемые по полям в текущем потоке (защита от циклических ссылок)
+	 */
+	private static final ThreadLocal<Set<Object>> WRITING = new ThreadLocal<Set<Object>>() {
+		@Override
+		protected Set<Object> initialValue() {
+			return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		}
+	};
+
 	/* (non-Javadoc)
 	 * @see packet.Serialize#supportedClasses()
 	 */
@@ -22,6 +70,17 @@ public class ObjectSerialize extends BaseSerialize {
 	 */
 	@Override
 	public int[] supportedClassesIDs() { return classesIDs; }
+
+	/**
+	 * @param reg реестр типов
+	 * @param c класс
+	 * @return сериалайзер класса из реестра или null (нет в реестре или это сериалайзер Object)
+	 */
+	private static Serialize registered(Registry reg, Class<?> c) {
+		Serialize s = reg.findSerializerByClass(c);
+		return s instanceof ObjectSerialize ? null : s;
+	}
+
 	/* (non-Javadoc)
 	 * @see packet.Serialize#read(java.lang.Object, packet.Registry, packet.Reader)
 	 */
@@ -29,14 +88,177 @@ public class ObjectSerialize extends BaseSerialize {
 	@Override
 	public <T, ReadObjectType> T read(ReadObjectType in, Registry reg, Reader<ReadObjectType> reader)
 			throws PacketIOException {
-		return (T)reader.readObject(in);
+		return (T)readValue(in, null, reg, reader);
 	}
+
+	/**
+	 * прочитать значение, записанное {@link #writeValue}
+	 * @param in объект для чтения
+	 * @param declared объявленный тип поля (см. {@link FieldAccessor#Declared}) или null
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return прочитанное значение
+	 * @throws PacketIOException
+	 */
+	static <ReadObjectType> Object readValue(ReadObjectType in, Class<?> declared, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		byte mode = reader.readByte(in);
+		try {
+			switch(mode) {
+				case USE_NULL:
+					return null;
+				case USE_TYPE_ID:
+					return reader.readSerializer(in, reg).read(in, reg, reader);
+				case USE_DECLARED:
+					if(declared == null) { break; }
+					return reg.getSerializerByClass(declared).read(in, reg, reader);
+				case USE_FIELDS: {
+					Class<?> c = reader.readClass(in);
+					//класс из потока: экземпляр создаётся только для явно разрешённых классов
+					if(!reg.isFieldsAllowed(c)) {
+						throw new PacketIOException(new InvalidClassException(c.getName(), "field serialization not allowed"));
+					}
+					return readFields(in, c, reg, reader);
+				}
+				case USE_JAVA:
+					return reader.readObject(in);
+			}
+		} catch (NotTypeIDException | IsMultiLevelArrayException | DynamicIDTypeArrayException e) {
+			throw new PacketIOException(e);
+		}
+		throw new PacketIOException(new StreamCorruptedException("invalid object mode " + mode));
+	}
+
+	/**
+	 * прочитать объект по полям
+	 * @param in объект для чтения
+	 * @param c класс объекта
+	 * @param reg реестр типов
+	 * @param reader читатель базовых типов
+	 * @return прочитанный объект
+	 * @throws PacketIOException
+	 */
+	private static <ReadObjectType> Object readFields(ReadObjectType in, Class<?> c, Registry reg, Reader<ReadObjectType> reader)
+			throws PacketIOException {
+		ClassLayout layout = ClassLayout.get(c);
+		if(!layout.useFields()) { throw new PacketIOException(new InvalidClassException(c.getName(), "no field layout")); }
+
+		try {
+			Object o = (Object)layout.Constructor.invokeExact();
+			for(FieldAccessor f : layout.Fields) {
+				switch(f.Kind) {
+					case ClassLayout.BOOLEAN: f.Setter.invokeExact(o, reader.readBoolean(in)); break;
+					case ClassLayout.BYTE: f.Setter.invokeExact(o, reader.readByte(in)); break;
+					case ClassLayout.CHAR: f.Setter.invokeExact(o, reader.readChar(in)); break;
+					case ClassLayout.SHORT: f.Setter.invokeExact(o, reader.readShort(in)); break;
+					case ClassLayout.INT: f.Setter.invokeExact(o, reader.readInt(in)); break;
+					case ClassLayout.LONG: f.Setter.invokeExact(o, reader.readLong(in)); break;
+					case ClassLayout.FLOAT: f.Setter.invokeExact(o, reader.readFloat(in)); break;
+					case ClassLayout.DOUBLE: f.Setter.invokeExact(o, reader.readDouble(in)); break;
+					default: f.Setter.invokeExact(o, readValue(in, f.Declared, reg, reader)); break;
+				}
+			}
+			return o;
+		} catch (PacketIOException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new PacketIOException(e);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see packet.Serialize#write(java.lang.Object, java.lang.Object, packet.Registry, packet.Writer)
 	 */
 	@Override
 	public <T, WriteObjectType> void write(WriteObjectType out, T v, Registry reg, Writer<WriteObjectType> writer)
 			throws PacketIOException {
-		writer.writeObject(out, (Object)v);
+		writeValue(out, v, null, reg, writer);
+	}
+
+	/**
+	 * записать значение с байтом способа записи
+	 * @param out объект для записи
+	 * @param v значение (может быть null)
+	 * @param declared объявленный тип поля (см. {@link FieldAccessor#Declared}) или null
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	static <WriteObjectType> void writeValue(WriteObjectType out, Object v, Class<?> declared, Registry reg, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		if(v == null) {
+			writer.writeByte(out, USE_NULL);
+			return;
+		}
+
+		Serialize s = declared != null ? registered(reg, declared) : null;
+		if(s != null) {
+			writer.writeByte(out, USE_DECLARED);
+			s.write(out, v, reg, writer);
+			return;
+		}
+
+		s = reg.findSerializerByInstance(v);
+		if(s != null && !(s instanceof ObjectSerialize)) {
+			writer.writeByte(out, USE_TYPE_ID);
+			try {
+				writer.writeTypeID(out, Registry.calculateInstanceID(v));
+			} catch (IsMultiLevelArrayException | DynamicIDTypeArrayException e) {
+				//не возникает - сериалайзер по экземпляру найден
+				throw new PacketIOException(e);
+			}
+			s.write(out, v, reg, writer);
+			return;
+		}
+
+		ClassLayout layout = ClassLayout.get(v.getClass());
+		if(layout.useFields() && reg.isFieldsAllowed(v.getClass())) {
+			writer.writeByte(out, USE_FIELDS);
+			writer.writeClassName(out, v.getClass());
+			writeFields(out, v, layout, reg, writer);
+		}
+		else {
+			writer.writeByte(out, USE_JAVA);
+			writer.writeObject(out, v);
+		}
+	}
+
+	/**
+	 * записать объект по полям
+	 * @param out объект для записи
+	 * @param v объект
+	 * @param layout описание класса объекта
+	 * @param reg реестр типов
+	 * @param writer писатель базовых типов
+	 * @throws PacketIOException
+	 */
+	private static <WriteObjectType> void writeFields(WriteObjectType out, Object v, ClassLayout layout, Registry reg, Writer<WriteObjectType> writer)
+			throws PacketIOException {
+		Set<Object> writing = WRITING.get();
+		if(!writing.add(v)) {
+			throw new PacketIOException(new NotSerializableException("cyclic reference to " + v.getClass().getName()));
+		}
+
+		try {
+			for(FieldAccessor f : layout.Fields) {
+				switch(f.Kind) {
+					case ClassLayout.BOOLEAN: writer.writeBoolean(out, (boolean)f.Getter.invokeExact(v)); break;
+					case ClassLayout.BYTE: writer.writeByte(out, (byte)f.Getter.invokeExact(v)); break;
+					case ClassLayout.CHAR: writer.writeChar(out, (char)f.Getter.invokeExact(v)); break;
+					case ClassLayout.SHORT: writer.writeShort(out, (short)f.Getter.invokeExact(v)); break;
+					case ClassLayout.INT: writer.writeInt(out, (int)f.Getter.invokeExact(v)); break;
+					case ClassLayout.LONG: writer.writeLong(out, (long)f.Getter.invokeExact(v)); break;
+					case ClassLayout.FLOAT: writer.writeFloat(out, (float)f.Getter.invokeExact(v)); break;
+					case ClassLayout.DOUBLE: writer.writeDouble(out, (double)f.Getter.invokeExact(v)); break;
+					default: writeValue(out, (Object)f.Getter.invokeExact(v), f.Declared, reg, writer); break;
+				}
+			}
+		} catch (PacketIOException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new PacketIOException(e);
+		} finally {
+			writing.remove(v);
+		}
 	}
 }
@@ -0,0 +1,156 @@
+package utils;
+
+/**
+ * неизменяемый мап int - значение<br />
+ * открытая адресация с линейным пробированием, ключи не упаковываются<br />
+ * изменение возвращает новый экземпляр (copy-on-write), поэтому чтение
+ * опубликованного экземпляра не требует блокировок
+ *
+ * @author Ilya Sokolov
+ *
+ * @param <V> тип значения, null не допускается
+ */
+public final class IntMap<V> {
+	/**
+	 * пустой мап
+	 */
+	private static final IntMap<Object> EMPTY = new IntMap<>(new int[1], new Object[1], 0);
+
+	/**
+	 * ключи
+	 */
+	private final int[] m_Keys;
+	/**
+	 * значения, null - свободная ячейка
+	 */
+	private final Object[] m_Values;
+	/**
+	 * маска индекса (размер таблицы - степень двойки)
+	 */
+	private final int m_Mask;
+	/**
+	 * количество элементов
+	 */
+	private final int m_Size;
+
+	private IntMap(int[] keys, Object[] values, int size) {
+		m_Keys = keys;
+		m_Values = values;
+		m_Mask = keys.length - 1;
+		m_Size = size;
+	}
+
+	/**
+	 * @return пустой мап
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> IntMap<V> empty() {
+		return (IntMap<V>)EMPTY;
+	}
+
+	/**
+	 * @param key ключ
+	 * @return начальная ячейка для ключа
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @param key ключ
+	 * @return ячейка с ключом или свободная ячейка, в которую он был бы записан
+	 */
+	private int slot(int key) {
+		int i = mix(key) & m_Mask;
+		while(m_Values[i] != null && m_Keys[i] != key) { i = (i + 1) & m_Mask; }
+		return i;
+	}
+
+	/**
+	 * найти значение по ключу
+	 * @param key ключ
+	 * @return значение или null, если ключа нет
+	 */
+	@SuppressWarnings("unchecked")
+	public final V get(int key) {
+		return (V)m_Values[slot(key)];
+	}
+
+	/**
+	 * @param key ключ
+	 * @return true если ключ существует
+	 */
+	public final boolean containsKey(int key) {
+		return m_Values[slot(key)] != null;
+	}
+
+	/**
+	 * @return количество элементов
+	 */
+	public final int size() {
+		return m_Size;
+	}
+
+	/**
+	 * @return массив ключей (порядок не определён)
+	 */
+	public final int[] keys() {
+		int[] keys = new int[m_Size];
+		int n = 0;
+		for(int i = 0; i < m_Values.length; ++i) {
+			if(m_Values[i] != null) { keys[n++] = m_Keys[i]; }
+		}
+		return keys;
+	}
+
+	/**
+	 * скопировать элементы в новую таблицу
+	 * @param size количество элементов в новом мапе
+	 * @param skipKey ключ, который не копируется
+	 * @param skip true - не копировать skipKey
+	 * @return новый мап
+	 */
+	private IntMap<V> copy(int size, int skipKey, boolean skip) {
+		//заполнение таблицы не больше половины
+		int capacity = m_Keys.length;
+		while(size * 2 > capacity) { capacity <<= 1; }
+		int[] keys = new int[capacity];
+		Object[] values = new Object[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < m_Values.length; ++i) {
+			if(m_Values[i] == null || (skip && m_Keys[i] == skipKey)) { continue; }
+			int j = mix(m_Keys[i]) & mask;
+			while(values[j] != null) { j = (j + 1) & mask; }
+			keys[j] = m_Keys[i];
+			values[j] = m_Values[i];
+		}
+		return new IntMap<>(keys, values, size);
+	}
+
+	/**
+	 * добавить или заменить значение
+	 * @param key ключ
+	 * @param value значение
+	 * @return новый мап
+	 */
+	public final IntMap<V> put(int key, V value) {
+		if(value == null) { throw new NullPointerException(); }
+
+		IntMap<V> map = copy(containsKey(key) ? m_Size : m_Size + 1, key, true);
+		int i = map.slot(key);
+		map.m_Keys[i] = key;
+		map.m_Values[i] = value;
+		return map;
+	}
+
+	/**
+	 * удалить значение
+	 * @param key ключ
+	 * @return новый мап (или этот же, если ключа нет)
+	 */
+	public final IntMap<V> remove(int key) {
+		if(!containsKey(key)) { return this; }
+		return copy(m_Size - 1, key, true);
+	}
+}
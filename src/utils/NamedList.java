@@ -1,18 +1,18 @@
 package utils;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /**
  * список<br />
  * доступ к параметрам по имени и по индексу<br />
  * элементы проиндексированы по порядку их добавления<br />
- * при сериализации/десиализации индексация не меняется
- * 
+ * при сериализации/десиализации индексация не меняется<br />
+ * хранение в массивах: значения и ключи по индексу, доступ по индексу O(1),
+ * при вставке/удалении пересчитываются индексы только сдвинутых элементов
+ *
  * @author Ilya Sokolov
  *
  * @param <V>
@@ -34,13 +34,86 @@ public final class NamedList<V> implements Iterable<V> {
 	}
 	
 	/**
-	 * список с данными
+	 * начальная ёмкость
+	 */
+	private static final int DEFAULT_CAPACITY = 8;
+	
+	/**
+	 * значения по индексу
+	 */
+	private Object[] m_Values;
+	/**
+	 * ключи по индексу
+	 */
+	private String[] m_Keys;
+	/**
+	 * количество элементов
+	 */
+	private int m_Size = 0;
+	/**
+	 * мап: ключ - имя элемента; значение - индекс
+	 */
+	private HashMap<String, Integer> m_Map;
+	
+	/**
+	 * конструктор<br />
+	 * пустой список
 	 */
-	private LinkedList<V> m_List = new LinkedList<>();
+	public NamedList() {
+		m_Values = new Object[DEFAULT_CAPACITY];
+		m_Keys = new String[DEFAULT_CAPACITY];
+		m_Map = new HashMap<>();
+	}
+	/**
+	 * копирующий конструктор<br />
+	 * элементы не копируются, копируется только структура списка
+	 * @param src исходный список
+	 */
+	public NamedList(NamedList<V> src) {
+		int capacity = Math.max(DEFAULT_CAPACITY, src.m_Size + 1);
+		m_Values = Arrays.copyOf(src.m_Values, capacity);
+		m_Keys = Arrays.copyOf(src.m_Keys, capacity);
+		m_Size = src.m_Size;
+		m_Map = new HashMap<>(src.m_Map);
+	}
+	
 	/**
-	 * мап: ключ - имя элемента; значение - индекс m_List
+	 * обеспечить место под ещё один элемент
 	 */
-	private HashMap<String, Integer> m_Map = new HashMap<>();
+	private void grow() {
+		if(m_Size < m_Values.length) { return; }
+		int capacity = m_Values.length * 2;
+		m_Values = Arrays.copyOf(m_Values, capacity);
+		m_Keys = Arrays.copyOf(m_Keys, capacity);
+	}
+	
+	/**
+	 * проверить индекс
+	 * @param index индекс элемента
+	 * @param size допустимая верхняя граница (исключая)
+	 */
+	private static void checkIndex(int index, int size) {
+		if(index < 0 || index >= size) { throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size); }
+	}
+	
+	/**
+	 * обновить индексы в m_Map для элементов начиная с from
+	 * @param from первый сдвинутый индекс
+	 */
+	private void reindex(int from) {
+		for(int i = from; i < m_Size; ++i) { m_Map.put(m_Keys[i], i); }
+	}
+	
+	/**
+	 * @return ключ, сгенерированный по индексу
+	 */
+	private String generateKey() {
+		int newIndex = m_Size;
+		while(m_Map.containsKey(Integer.toString(newIndex))) {
+			++newIndex;
+		}
+		return Integer.toString(newIndex);
+	}
 	
 	/**
 	 * добавить новый элемент<br />
@@ -48,13 +121,8 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @param newValue экземпляр данных
 	 */
 	public final void add(V newValue) {
-		int newIndex = m_List.size();
-		while(m_Map.containsKey(Integer.toString(newIndex))) {
-			++newIndex;
-		}
-		
 		try {
-			add(Integer.toString(newIndex), newValue);
+			add(generateKey(), newValue);
 		} catch (DuplicateKeyException e) {
 			//не долно быть исключений
 		}
@@ -77,8 +145,11 @@ public final class NamedList<V> implements Iterable<V> {
 	public final void add(String key, V newValue) throws DuplicateKeyException {
 		if(m_Map.containsKey(key)) { throw new DuplicateKeyException(); }
 		
-		m_List.add(newValue);
-		m_Map.put(key, m_List.size() - 1);
+		grow();
+		m_Values[m_Size] = newValue;
+		m_Keys[m_Size] = key;
+		m_Map.put(key, m_Size);
+		++m_Size;
 	}
 	
 	/**
@@ -91,18 +162,14 @@ public final class NamedList<V> implements Iterable<V> {
 	}
 	
 	/**
-	 * вставить новый элемент на указанную позицию
+	 * вставить новый элемент на указанную позицию<br />
+	 * ключ сгенерировать по индексу
 	 * @param newValue новый элемент
-	 * @param index индекс в m_List
+	 * @param index индекс
 	 */
 	public final void insert(V newValue, int index) {
-		int newIndex = m_List.size();
-		while(m_Map.containsKey(Integer.toString(newIndex))) {
-			++newIndex;
-		}
-		
 		try {
-			insert(Integer.toString(newIndex), newValue, newIndex);
+			insert(generateKey(), newValue, index);
 		} catch (DuplicateKeyException e) {
 			//не долно быть исключений
 		}
@@ -112,21 +179,20 @@ public final class NamedList<V> implements Iterable<V> {
 	 * вставить новый элемент на указанную позицию
 	 * @param key ключ
 	 * @param newValue новый элемент
-	 * @param index индекс в m_List
+	 * @param index индекс
 	 * @throws DuplicateKeyException
 	 */
 	public final void insert(String key, V newValue, int index) throws DuplicateKeyException {
+		checkIndex(index, m_Size + 1);
 		if(m_Map.containsKey(key)) { throw new DuplicateKeyException(); }
 		
-		m_List.add(index, newValue);
-		
-		Set<String> keys = m_Map.keySet();
-		for(String itKey : keys) {
-			int itIndex = m_Map.get(itKey);
-			if(itIndex >= index) { m_Map.put(itKey, itIndex + 1); }
-		}
-		
-		m_Map.put(key, index);
+		grow();
+		System.arraycopy(m_Values, index, m_Values, index + 1, m_Size - index);
+		System.arraycopy(m_Keys, index, m_Keys, index + 1, m_Size - index);
+		m_Values[index] = newValue;
+		m_Keys[index] = key;
+		++m_Size;
+		reindex(index);
 	}
 	
 	/**
@@ -141,10 +207,13 @@ public final class NamedList<V> implements Iterable<V> {
 	/**
 	 * проверить существование элемента
 	 * @param value искомое значение
-	 * @return true если элемент содержиться в m_list
+	 * @return true если элемент содержиться в списке
 	 */
 	public final boolean containsValue(V value) {
-		return m_List.contains(value);
+		for(int i = 0; i < m_Size; ++i) {
+			if(value == null ? m_Values[i] == null : value.equals(m_Values[i])) { return true; }
+		}
+		return false;
 	}
 	
 	/**
@@ -152,8 +221,10 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @param index индекс элемента
 	 * @return значение
 	 */
+	@SuppressWarnings("unchecked")
 	public final V get(int index) {
-		return m_List.get(index);
+		checkIndex(index, m_Size);
+		return (V)m_Values[index];
 	}
 	
 	/**
@@ -162,9 +233,31 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @return значение
 	 * @throws KeyNotFoundException
 	 */
+	@SuppressWarnings("unchecked")
 	public final V get(String key) throws KeyNotFoundException {
-		if(!m_Map.containsKey(key)) { throw new KeyNotFoundException(); }
-		return m_List.get(m_Map.get(key));
+		return (V)m_Values[indexOf(key)];
+	}
+	
+	/**
+	 * найти индекс элемента по ключу
+	 * @param key ключ
+	 * @return индекс
+	 * @throws KeyNotFoundException
+	 */
+	public final int indexOf(String key) throws KeyNotFoundException {
+		Integer index = m_Map.get(key);
+		if(index == null) { throw new KeyNotFoundException(); }
+		return index;
+	}
+	
+	/**
+	 * получить ключ по индексу
+	 * @param index индекс элемента
+	 * @return ключ
+	 */
+	public final String keyAt(int index) {
+		checkIndex(index, m_Size);
+		return m_Keys[index];
 	}
 	
 	/**
@@ -173,7 +266,8 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @param index индекс
 	 */
 	public final void put(V newValue, int index) {
-		m_List.set(index, newValue);
+		checkIndex(index, m_Size);
+		m_Values[index] = newValue;
 	}
 	
 	/**
@@ -183,8 +277,7 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @throws KeyNotFoundException
 	 */
 	public final void put(V newValue, String key) throws KeyNotFoundException {
-		if(!m_Map.containsKey(key)) { throw new KeyNotFoundException(); }
-		m_List.set(m_Map.get(key), newValue);
+		m_Values[indexOf(key)] = newValue;
 	}
 	
 	/**
@@ -192,7 +285,7 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @return
 	 */
 	public final int size() {
-		return m_List.size();
+		return m_Size;
 	}
 	
 	/**
@@ -200,14 +293,15 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @param index индекс
 	 */
 	public final void remove(int index) {
-		m_List.remove(index);
+		checkIndex(index, m_Size);
 		
-		Set<String> keys = m_Map.keySet();
-		for(String itKey : keys) {
-			int itIndex = m_Map.get(itKey);
-			if(index < itIndex) { m_Map.put(itKey, itIndex - 1); }
-			if(itIndex == index) { m_Map.remove(itKey); }
-		}
+		m_Map.remove(m_Keys[index]);
+		--m_Size;
+		System.arraycopy(m_Values, index + 1, m_Values, index, m_Size - index);
+		System.arraycopy(m_Keys, index + 1, m_Keys, index, m_Size - index);
+		m_Values[m_Size] = null;
+		m_Keys[m_Size] = null;
+		reindex(index);
 	}
 	
 	/**
@@ -216,50 +310,52 @@ public final class NamedList<V> implements Iterable<V> {
 	 * @throws KeyNotFoundException
 	 */
 	public final void remove(String key) throws KeyNotFoundException {
-		if(!m_Map.containsKey(key)) { throw new KeyNotFoundException(); }
-		
-		int remIndex = m_Map.get(key);
-		
-		m_List.remove(remIndex);
-		m_Map.remove(key);
-		
-		Set<String> keys = m_Map.keySet();
-		for(String itKey : keys) {
-			int index = m_Map.get(itKey);
-			if(index > remIndex) { m_Map.put(itKey, index - 1); }
-		}
+		remove(indexOf(key));
 	}
 	
 	/**
 	 * удалить все значениея и ключи
 	 */
 	public final void clear() {
-		m_List.clear();
+		Arrays.fill(m_Values, 0, m_Size, null);
+		Arrays.fill(m_Keys, 0, m_Size, null);
+		m_Size = 0;
 		m_Map.clear();
 	}
 	
 	/**
-	 * получить список ключей, отсортированных по порядку расположения элементов в m_List
+	 * получить список ключей в порядке расположения элементов
 	 * @return массив ключей
 	 */
 	public final String[] getKeysSortedByIndex() {
-		Set<String> keys = m_Map.keySet();
-		ArrayList<Pair<String, Integer>> arr = new ArrayList<>(keys.size());
-		String[] sortedKeys = new String[keys.size()];
-		for(String key : keys) { arr.add(new Pair<>(key, m_Map.get(key))); }
-		Collections.sort(arr, 
-				(Pair<String, Integer> o1, Pair<String, Integer> o2) -> {
-						return o1.getSecond() < o2.getSecond() ? -1 : 1;
-					});
-		for(int i = 0; i < arr.size(); ++i) { sortedKeys[i] = arr.get(i).getFirst(); }
-		return sortedKeys;
+		return Arrays.copyOf(m_Keys, m_Size);
 	}
-
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Iterable#iterator()
 	 */
 	@Override
 	public Iterator<V> iterator() {
-		return m_List.iterator();
+		return new Iterator<V>() {
+			private int m_Next = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return m_Next < m_Size;
+			}
+			
+			@SuppressWarnings("unchecked")
+			@Override
+			public V next() {
+				if(m_Next >= m_Size) { throw new NoSuchElementException(); }
+				return (V)m_Values[m_Next++];
+			}
+			
+			@Override
+			public void remove() {
+				if(m_Next == 0) { throw new IllegalStateException(); }
+				NamedList.this.remove(--m_Next);
+			}
+		};
 	}
 }